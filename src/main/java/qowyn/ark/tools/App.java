@@ -35,6 +35,11 @@ public class App {
     addCommand(list("creatures"), "Creatures", list("SAVE", "DIRECTORY"), "Writes lists of all creatures in SAVE to the specified DIRECTORY.", CreatureListCommands::creatures);
     addCommand(list("tamed"), "Creatures", list("SAVE", "DIRECTORY"), "Writes lists of tamed creatures in SAVE to the specified DIRECTORY.", CreatureListCommands::tamed);
     addCommand(list("wild"), "Creatures", list("SAVE", "DIRECTORY"), "Writes lists of wild creatures in SAVE to the specified DIRECTORY.", CreatureListCommands::wild);
+    addCommand(list("lineage"), "Creatures", list("SAVE", "[OUT_FILE]"), "Writes breeding lines of tamed creatures or ancestors and descendants of specific creatures to stdout or OUT_FILE.",
+        BreedingCommands::lineage);
+    addCommand(list("breed-plan"), "Creatures", list("SAVE", "[OUT_FILE]"), "Writes the best breeding pairs for each class and tribe to stdout or OUT_FILE.", BreedingCommands::breedPlan);
+    addCommand(list("diff-creatures"), "Creatures", list("OLD_SAVE", "NEW_SAVE", "[OUT_FILE]"), "Writes added, removed, changed and moved tamed creatures between OLD_SAVE and NEW_SAVE to stdout or OUT_FILE.",
+        DiffCommands::diffCreatures);
 
     addCommand(list("m2j", "mapToJson"), "Converting", list("ARK", "JSON"), "Converts from .ark to .json", ConvertingCommands::mapToJson);
     addCommand(list("p2j", "profileToJson"), "Converting", list("PROFILE", "JSON"), "Converts from .arkprofile to .json", ConvertingCommands::profileToJson);
@@ -53,22 +58,32 @@ public class App {
     addCommand(list("classes"), "Debug", list("SAVE", "[OUT_FILE]"), "Dumps a list of all classes with count of objects to stdout or OUT_FILE.", DebugCommands::classes);
     addCommand(list("dump"), "Debug", list("SAVE", "CLASS_NAME", "[OUT_FILE]"), "Dumps all objects of given CLASS_NAME to stdout or OUT_FILE.", DebugCommands::dump);
     addCommand(list("sizes"), "Debug", list("SAVE", "[OUT_FILE]"), "Dumps className and size in bytes of all objects to stdout or OUT_FILE.", DebugCommands::sizes);
+    addCommand(list("diff"), "Debug", list("OLD_SAVE", "NEW_SAVE", "[OUT_FILE]"), "Compares all objects of OLD_SAVE and NEW_SAVE and writes differing objects to stdout or OUT_FILE.", DiffCommands::diff);
+    addCommand(list("dupes"), "Debug", list("SAVE", "[OUT_FILE]"), "Reports creatures and items sharing the same DinoID or ItemID to stdout or OUT_FILE.", DupeCommands::dupes);
 
     addCommand(list("feed"), "Editing", list("SAVE", "NEW_SAVE"),
         "Sets food of all tamed creatures to max and brings them into the present. "
             + "Mainly useful if you left your server running with no players online.",
         EditingCommands::feed);
+    addCommand(list("edit"), "Editing", list("SAVE", "EDIT_FILE", "NEW_SAVE"), "Sets properties of all objects matching the selectors in EDIT_FILE.", EditingCommands::edit);
     addCommand(list("export"), "Editing", list("SAVE", "JSON"),
         "Export a specified object/dino and everything attached to it. "
             + "Can be used to 'revive' dinos from backups or to import bases from another save file. "
             + "Or to do whatever else you want. "
             + "Manually editing exported file might be required.",
         EditingCommands::exportThing);
-    addCommand(list("import"), "Editing", list("SAVE", "JSON", "NEW_SAVE"), "Imports all objects from JSON into SAVE.", EditingCommands::importThing);
+    addCommand(list("import"), "Editing", list("SAVE", "JSON", "[JSON...]", "NEW_SAVE"), "Imports all objects from each JSON file or directory of JSON files into SAVE.", EditingCommands::importThing);
+    addCommand(list("save-to-cluster"), "Editing", list("SAVE", "CLUSTER_DIRECTORY"), "Uploads tamed creatures from SAVE into the cluster files of their owners in CLUSTER_DIRECTORY.",
+        EditingCommands::saveToCluster);
     addCommand(list("modify"), "Editing", list("INPUT", "MODIFICATION", "OUTPUT"), "Applies the actions defined in MODIFICATION to the specified INPUT file.", EditingCommands::modify);
+    addCommand(list("gc"), "Editing", list("SAVE", "NEW_SAVE"), "Removes all objects from SAVE which are not reachable from any actor, like items of deleted inventories.", CleanupCommands::gc);
+    addCommand(list("dedupe"), "Editing", list("SAVE", "NEW_SAVE"), "Removes objects which are saved twice under the same name and everything only they refer to.", CleanupCommands::dedupe);
+    addCommand(list("wipe"), "Editing", list("SAVE", "NEW_SAVE"), "Removes all objects matching the given filters together with their components and items.", CleanupCommands::wipe);
 
     addCommand(list("players"), "Players", list("SAVE", "DIRECTORY"), "Writes lists of all players in SAVE to the specified DIRECTORY.", PlayerListCommands::players);
     addCommand(list("tribes"), "Players", list("SAVE", "DIRECTORY"), "Writes lists of all tribes in SAVE to the specified DIRECTORY.", PlayerListCommands::tribes);
+    addCommand(list("tribe-log"), "Players", list("SAVE", "NDJSON_FILE"), "Appends tribe log entries added since the last run to NDJSON_FILE, one line per entry.",
+        PlayerListCommands::tribeLog);
     addCommand(list("cluster"), "Players", list("CLUSTER_DIRECTORY", "OUTPUT_DIRECTORY"), "Writes lists of all things which players have uploaded into the cluster.", PlayerListCommands::cluster);
 
     addCommand(list("latlon"), "Settings", list(), "Exports internal LatLonCalculator data to latLonCalculator.json in the current working directory", SettingsCommands::latlon);
@@ -0,0 +1,47 @@
+package qowyn.ark.tools;
+
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Replaces files through a temporary sibling, readers see either the old or the new file.
+ */
+public class AtomicFiles {
+
+  /**
+   * Creates an empty temporary file next to {@code target}.
+   *
+   * Unlike {@link Files#createTempFile} the file gets the default permissions, after the move the new file
+   * is as readable as any other file written by this tool.
+   */
+  public static Path createTempSibling(Path target) throws IOException {
+    Path directory = target.toAbsolutePath().getParent();
+    String prefix = target.getFileName().toString() + ".";
+
+    while (true) {
+      Path temp = directory.resolve(prefix + Long.toHexString(ThreadLocalRandom.current().nextLong()) + ".tmp");
+      try {
+        return Files.createFile(temp);
+      } catch (FileAlreadyExistsException ex) {
+        // Try another name
+      }
+    }
+  }
+
+  /**
+   * Moves {@code temp} over {@code target}, atomically if the file system supports it.
+   */
+  public static void replace(Path temp, Path target) throws IOException {
+    try {
+      Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } catch (AtomicMoveNotSupportedException ex) {
+      Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+    }
+  }
+
+}
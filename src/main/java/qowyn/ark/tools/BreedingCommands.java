@@ -0,0 +1,335 @@
+package qowyn.ark.tools;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+import javax.json.stream.JsonGenerator;
+
+import joptsimple.OptionSet;
+import joptsimple.OptionSpec;
+import qowyn.ark.ArkSavegame;
+import qowyn.ark.GameObject;
+import qowyn.ark.tools.data.AttributeNames;
+
+public class BreedingCommands {
+
+  public static void lineage(OptionHandler oh) {
+    OptionSpec<Long> dinoIdSpec = oh.accepts("dinoid", "Query ancestors and descendants of creature with DinoID, can be repeated.").withRequiredArg().ofType(Long.class).describedAs("id");
+    OptionSpec<Integer> maxDepthSpec = oh.accepts("max-depth", "Limit queries to <generations> generations.").withRequiredArg().ofType(Integer.class).describedAs("generations");
+    OptionSpec<Void> withoutAncestorsSpec = oh.accepts("without-ancestors", "Don't include ancestors in query results.");
+    OptionSpec<Void> withoutDescendantsSpec = oh.accepts("without-descendants", "Don't include descendants in query results.");
+
+    OptionSet options = oh.reparse();
+
+    List<String> params = oh.getParams(options);
+    if (params.size() < 1 || params.size() > 2 || oh.wantsHelp()) {
+      oh.printCommandHelp();
+      System.exit(1);
+      return;
+    }
+
+    DataManager.loadData(oh.lang());
+
+    try {
+      String savePath = params.get(0);
+      int maxDepth = options.has(maxDepthSpec) ? maxDepthSpec.value(options) : Integer.MAX_VALUE;
+
+      Stopwatch stopwatch = new Stopwatch(oh.useStopwatch());
+
+      ArkSavegame savegame = new ArkSavegame(savePath, oh.readingOptions().withObjectFilter(CreatureListCommands::neededClasses));
+
+      stopwatch.stop("Loading");
+
+      List<GameObject> tamed = savegame.getObjects().parallelStream()
+          .filter(CreatureListCommands::onlyCreatures)
+          .filter(o -> CommonFunctions.onlyTamed(o, savegame))
+          .collect(Collectors.toList());
+
+      LineageIndex index = LineageIndex.build(tamed);
+
+      stopwatch.stop("Indexing");
+
+      Consumer<JsonGenerator> writer;
+
+      if (options.has(dinoIdSpec)) {
+        writer = g -> {
+          g.writeStartArray();
+
+          for (long dinoId : dinoIdSpec.values(options)) {
+            int node = index.indexOf(dinoId);
+
+            g.writeStartObject();
+            g.write("id", dinoId);
+
+            if (node == -1) {
+              g.write("found", false);
+              g.writeEnd();
+              continue;
+            }
+
+            writeNodeInfo(g, index, node);
+            g.write("generation", index.getGeneration(node));
+
+            if (!options.has(withoutAncestorsSpec)) {
+              g.writeStartArray("ancestors");
+              index.forEachAncestor(node, maxDepth, (ancestor, depth) -> {
+                g.writeStartObject();
+                g.write("id", index.getId(ancestor));
+                writeNodeInfo(g, index, ancestor);
+                g.write("depth", depth);
+                g.writeEnd();
+              });
+              g.writeEnd();
+            }
+
+            if (!options.has(withoutDescendantsSpec)) {
+              g.writeStartArray("descendants");
+              index.forEachDescendant(node, maxDepth, (descendant, depth) -> {
+                g.writeStartObject();
+                g.write("id", index.getId(descendant));
+                writeNodeInfo(g, index, descendant);
+                g.write("depth", depth);
+                g.writeEnd();
+              });
+              g.writeEnd();
+            }
+
+            g.writeEnd();
+          }
+
+          g.writeEnd();
+        };
+      } else {
+        // Summary of all breeding lines, a line starts at a creature without known parents
+        List<int[]> lines = new ArrayList<>();
+        index.forEachLine((founder, descendants, generations) -> lines.add(new int[] {founder, descendants, generations}));
+
+        lines.sort(Comparator.comparingInt((int[] line) -> line[1]).reversed());
+
+        writer = g -> {
+          g.writeStartObject();
+
+          g.write("creatures", tamed.size());
+          g.write("knownCreatures", index.size());
+
+          g.writeStartArray("lines");
+          for (int[] line : lines) {
+            g.writeStartObject();
+            g.write("id", index.getId(line[0]));
+            writeNodeInfo(g, index, line[0]);
+            g.write("descendants", line[1]);
+            g.write("generations", line[2]);
+            g.writeEnd();
+          }
+          g.writeEnd();
+
+          g.writeEnd();
+        };
+      }
+
+      stopwatch.stop("Querying");
+
+      if (params.size() > 1) {
+        CommonFunctions.writeJson(params.get(1), writer, oh);
+      } else {
+        CommonFunctions.writeJson(System.out, writer, oh);
+      }
+
+      stopwatch.stop("Writing");
+      stopwatch.print();
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  public static void breedPlan(OptionHandler oh) {
+    OptionSpec<String> statsSpec = oh.accepts("stats", "Only consider the given stats, defaults to all stats except torpor.").withRequiredArg().withValuesSeparatedBy(',').describedAs("health,stamina,...");
+    OptionSpec<Integer> topSpec = oh.accepts("top", "Number of pairs to list per class and tribe.").withRequiredArg().ofType(Integer.class).defaultsTo(3).describedAs("count");
+    OptionSpec<Integer> teamSpec = oh.accepts("team", "Only plan for the given tribe/team.").withRequiredArg().ofType(Integer.class).describedAs("team");
+
+    OptionSet options = oh.reparse();
+
+    List<String> params = oh.getParams(options);
+    if (params.size() < 1 || params.size() > 2 || oh.wantsHelp()) {
+      oh.printCommandHelp();
+      System.exit(1);
+      return;
+    }
+
+    int[] statIndices;
+    if (options.has(statsSpec)) {
+      // Repeated stats would only weigh them twice
+      List<String> statNames = new ArrayList<>(new LinkedHashSet<>(options.valuesOf(statsSpec)));
+      if (statNames.size() > BreedingPlanner.MAX_STATS) {
+        oh.printCommandHelp();
+        System.exit(1);
+        return;
+      }
+
+      statIndices = new int[statNames.size()];
+      for (int i = 0; i < statNames.size(); i++) {
+        statIndices[i] = -1;
+        for (int index = 0; index < AttributeNames.size(); index++) {
+          if (AttributeNames.get(index).equals(statNames.get(i))) {
+            statIndices[i] = index;
+          }
+        }
+
+        if (statIndices[i] == -1) {
+          System.err.println("Unknown stat " + statNames.get(i));
+          System.exit(2);
+          return;
+        }
+      }
+    } else {
+      // Torpor is not worth breeding for
+      statIndices = new int[AttributeNames.size() - 1];
+      for (int index = 0, i = 0; index < AttributeNames.size(); index++) {
+        if (index != 2) {
+          statIndices[i++] = index;
+        }
+      }
+    }
+
+    int top = options.valueOf(topSpec);
+    if (top < 1) {
+      oh.printCommandHelp();
+      System.exit(1);
+      return;
+    }
+
+    DataManager.loadData(oh.lang());
+
+    try {
+      String savePath = params.get(0);
+
+      Stopwatch stopwatch = new Stopwatch(oh.useStopwatch());
+
+      ArkSavegame savegame = new ArkSavegame(savePath, oh.readingOptions().withObjectFilter(CreatureListCommands::neededClasses));
+
+      stopwatch.stop("Loading");
+
+      Map<String, Map<Integer, List<GameObject>>> groups = savegame.getObjects().parallelStream()
+          .filter(CreatureListCommands::onlyCreatures)
+          .filter(o -> CommonFunctions.onlyTamed(o, savegame))
+          .filter(o -> !options.has(teamSpec) || Objects.equals(o.getPropertyValue("TargetingTeam", Integer.class), teamSpec.value(options)))
+          .collect(Collectors.groupingByConcurrent(GameObject::getClassString, Collectors.groupingBy(o -> o.getPropertyValue("TargetingTeam", Integer.class))));
+
+      stopwatch.stop("Grouping");
+
+      List<BreedingGroupResult> results = groups.entrySet().parallelStream()
+          .flatMap(classEntry -> classEntry.getValue().entrySet().stream().map(teamEntry -> {
+            BreedingPlanner planner = new BreedingPlanner(teamEntry.getValue(), savegame, statIndices);
+            return new BreedingGroupResult(classEntry.getKey(), teamEntry.getKey(), teamEntry.getValue().size(), planner, planner.findBestPairs(top));
+          }))
+          .filter(result -> !result.pairs.isEmpty())
+          .sorted(Comparator.comparing((BreedingGroupResult result) -> result.className).thenComparingInt(result -> result.team))
+          .collect(Collectors.toList());
+
+      stopwatch.stop("Planning");
+
+      Consumer<JsonGenerator> writer = g -> {
+        g.writeStartArray();
+
+        for (BreedingGroupResult result : results) {
+          g.writeStartObject();
+
+          g.write("type", DataManager.hasCreature(result.className) ? DataManager.getCreature(result.className).getName() : result.className);
+          g.write("class", result.className);
+          g.write("team", result.team);
+          g.write("creatures", result.creatureCount);
+          g.write("maxScore", result.planner.getMaxScore());
+
+          g.writeStartArray("pairs");
+          for (BreedingPlanner.Pair pair : result.pairs) {
+            g.writeStartObject();
+            g.write("score", pair.score);
+            writePairMember(g, "male", result.planner.getCreature(pair.male));
+            writePairMember(g, "female", result.planner.getCreature(pair.female));
+
+            g.writeStartObject("stats");
+            for (int s = 0; s < statIndices.length; s++) {
+              g.write(AttributeNames.get(statIndices[s]), result.planner.getPairStat(pair, s));
+            }
+            g.writeEnd();
+
+            g.writeEnd();
+          }
+          g.writeEnd();
+
+          g.writeEnd();
+        }
+
+        g.writeEnd();
+      };
+
+      if (params.size() > 1) {
+        CommonFunctions.writeJson(params.get(1), writer, oh);
+      } else {
+        CommonFunctions.writeJson(System.out, writer, oh);
+      }
+
+      stopwatch.stop("Writing");
+      stopwatch.print();
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  private static void writePairMember(JsonGenerator generator, String fieldName, GameObject creature) {
+    generator.writeStartObject(fieldName);
+    generator.write("id", CommonFunctions.getDinoId(creature));
+    String name = creature.getPropertyValue("TamedName", String.class);
+    if (name != null) {
+      generator.write("name", name);
+    }
+    generator.writeEnd();
+  }
+
+  private static class BreedingGroupResult {
+
+    private final String className;
+
+    private final int team;
+
+    private final int creatureCount;
+
+    private final BreedingPlanner planner;
+
+    private final List<BreedingPlanner.Pair> pairs;
+
+    public BreedingGroupResult(String className, int team, int creatureCount, BreedingPlanner planner, List<BreedingPlanner.Pair> pairs) {
+      this.className = className;
+      this.team = team;
+      this.creatureCount = creatureCount;
+      this.planner = planner;
+      this.pairs = pairs;
+    }
+
+  }
+
+  private static void writeNodeInfo(JsonGenerator generator, LineageIndex index, int node) {
+    String name = index.getName(node);
+    if (name != null) {
+      generator.write("name", name);
+    }
+
+    GameObject creature = index.getCreature(node);
+    if (creature != null) {
+      String type = creature.getClassString();
+      generator.write("type", DataManager.hasCreature(type) ? DataManager.getCreature(type).getName() : type);
+      generator.write("female", creature.hasAnyProperty("bIsFemale"));
+      generator.write("team", creature.findPropertyValue("TargetingTeam", Integer.class).orElse(0));
+    } else {
+      generator.write("alive", false);
+    }
+  }
+
+}
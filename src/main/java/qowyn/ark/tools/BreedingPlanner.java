@@ -0,0 +1,240 @@
+package qowyn.ark.tools;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import qowyn.ark.GameObject;
+import qowyn.ark.GameObjectContainer;
+import qowyn.ark.types.ArkByteValue;
+import qowyn.ark.types.ObjectReference;
+
+/**
+ * Finds male/female pairs of a single breeding group (same class and tribe) with the best
+ * combined wild stats, assuming the offspring inherits the higher stat of both parents.
+ */
+public class BreedingPlanner {
+
+  /**
+   * Stats are tracked as bits of an int mask
+   */
+  public static final int MAX_STATS = Integer.SIZE - 1;
+
+  private final List<GameObject> creatures;
+
+  private final int statCount;
+
+  /**
+   * Wild levels of all creatures, {@code statCount} unsigned bytes per creature
+   */
+  private final byte[] stats;
+
+  /**
+   * Bit i is set if the creature has the highest level of the group in stat i
+   */
+  private final int[] maxMasks;
+
+  private final int[] sums;
+
+  private final int[] groupMax;
+
+  private final int maxScore;
+
+  public BreedingPlanner(List<GameObject> creatures, GameObjectContainer saveFile, int[] statIndices) {
+    if (statIndices.length > MAX_STATS) {
+      throw new IllegalArgumentException("At most " + MAX_STATS + " stats supported, got " + statIndices.length);
+    }
+
+    this.creatures = creatures;
+    this.statCount = statIndices.length;
+    this.stats = new byte[creatures.size() * statCount];
+    this.maxMasks = new int[creatures.size()];
+    this.sums = new int[creatures.size()];
+    this.groupMax = new int[statCount];
+
+    for (int c = 0; c < creatures.size(); c++) {
+      GameObject creature = creatures.get(c);
+      GameObject status = creature.findPropertyValue("MyCharacterStatusComponent", ObjectReference.class).map(saveFile::getObject).orElse(null);
+      if (status == null) {
+        continue;
+      }
+
+      for (int s = 0; s < statCount; s++) {
+        int value = status.findPropertyValue("NumberOfLevelUpPointsApplied", ArkByteValue.class, statIndices[s]).map(b -> Byte.toUnsignedInt(b.getByteValue())).orElse(0);
+        stats[c * statCount + s] = (byte) value;
+        sums[c] += value;
+        groupMax[s] = Math.max(groupMax[s], value);
+      }
+    }
+
+    int score = 0;
+    for (int s = 0; s < statCount; s++) {
+      score += groupMax[s];
+    }
+    maxScore = score;
+
+    for (int c = 0; c < creatures.size(); c++) {
+      int mask = 0;
+      for (int s = 0; s < statCount; s++) {
+        if (stat(c, s) == groupMax[s]) {
+          mask |= 1 << s;
+        }
+      }
+      maxMasks[c] = mask;
+    }
+  }
+
+  private int stat(int creature, int statIndex) {
+    return Byte.toUnsignedInt(stats[creature * statCount + statIndex]);
+  }
+
+  public int getStatCount() {
+    return statCount;
+  }
+
+  public int getMaxScore() {
+    return maxScore;
+  }
+
+  public GameObject getCreature(int creature) {
+    return creatures.get(creature);
+  }
+
+  /**
+   * @return level of stat {@code statIndex} the best offspring of {@code pair} can inherit
+   */
+  public int getPairStat(Pair pair, int statIndex) {
+    return Math.max(stat(pair.male, statIndex), stat(pair.female, statIndex));
+  }
+
+  /**
+   * @return true if {@code a} has at least the same level in every stat as {@code b}
+   */
+  private boolean dominates(int a, int b) {
+    // a can't dominate b if b holds a group maximum a doesn't hold
+    if ((maxMasks[b] & ~maxMasks[a]) != 0) {
+      return false;
+    }
+
+    int offsetA = a * statCount;
+    int offsetB = b * statCount;
+    for (int s = 0; s < statCount; s++) {
+      if (Byte.toUnsignedInt(stats[offsetA + s]) < Byte.toUnsignedInt(stats[offsetB + s])) {
+        return false;
+      }
+    }
+
+    return true;
+  }
+
+  /**
+   * Removes all creatures which are dominated by at least {@code count} other creatures of the same sex.
+   * Replacing a dominated creature never makes a pair worse, so each of its pairs is matched or beaten by
+   * {@code count} other pairs and can't be part of the best {@code count} pairs.
+   */
+  private int[] paretoFront(List<Integer> candidates, int count) {
+    Integer[] sorted = candidates.toArray(new Integer[0]);
+    Arrays.sort(sorted, (a, b) -> Integer.compare(sums[b], sums[a]));
+
+    int[] front = new int[sorted.length];
+    int frontSize = 0;
+
+    // Dominating creatures have at least the same sum and come first. Dominators which got removed themselves
+    // are dominated by count creatures of the front, which then dominate the candidate as well.
+    for (int candidate : sorted) {
+      int dominators = 0;
+      for (int i = 0; i < frontSize && dominators < count; i++) {
+        if (dominates(front[i], candidate)) {
+          dominators++;
+        }
+      }
+      if (dominators < count) {
+        front[frontSize++] = candidate;
+      }
+    }
+
+    return Arrays.copyOf(front, frontSize);
+  }
+
+  public List<Pair> findBestPairs(int count) {
+    if (count < 1) {
+      throw new IllegalArgumentException("count has to be positive, was " + count);
+    }
+
+    List<Integer> males = new ArrayList<>();
+    List<Integer> females = new ArrayList<>();
+
+    for (int c = 0; c < creatures.size(); c++) {
+      if (creatures.get(c).hasAnyProperty("bIsFemale")) {
+        females.add(c);
+      } else {
+        males.add(c);
+      }
+    }
+
+    int[] maleFront = paretoFront(males, count);
+    int[] femaleFront = paretoFront(females, count);
+
+    int[] femaleMax = new int[statCount];
+    for (int female : femaleFront) {
+      for (int s = 0; s < statCount; s++) {
+        femaleMax[s] = Math.max(femaleMax[s], stat(female, s));
+      }
+    }
+
+    int fullMask = (1 << statCount) - 1;
+    Pair[] best = new Pair[count];
+    int bestSize = 0;
+
+    for (int male : maleFront) {
+      int upperBound = 0;
+      for (int s = 0; s < statCount; s++) {
+        upperBound += Math.max(stat(male, s), femaleMax[s]);
+      }
+
+      if (bestSize == count && upperBound <= best[count - 1].score) {
+        continue;
+      }
+
+      for (int female : femaleFront) {
+        int score;
+        if ((maxMasks[male] | maxMasks[female]) == fullMask) {
+          score = maxScore;
+        } else {
+          score = 0;
+          for (int s = 0; s < statCount; s++) {
+            score += Math.max(stat(male, s), stat(female, s));
+          }
+        }
+
+        if (bestSize < count || score > best[bestSize - 1].score) {
+          int position = bestSize < count ? bestSize++ : count - 1;
+          while (position > 0 && best[position - 1].score < score) {
+            best[position] = best[position - 1];
+            position--;
+          }
+          best[position] = new Pair(male, female, score);
+        }
+      }
+    }
+
+    return Arrays.asList(Arrays.copyOf(best, bestSize));
+  }
+
+  public static class Pair {
+
+    public final int male;
+
+    public final int female;
+
+    public final int score;
+
+    public Pair(int male, int female, int score) {
+      this.male = male;
+      this.female = female;
+      this.score = score;
+    }
+
+  }
+
+}
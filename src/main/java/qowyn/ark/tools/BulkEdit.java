@@ -0,0 +1,333 @@
+package qowyn.ark.tools;
+
+import static qowyn.ark.tools.JsonValidator.expect;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import javax.json.Json;
+import javax.json.JsonArray;
+import javax.json.JsonNumber;
+import javax.json.JsonObject;
+import javax.json.JsonString;
+import javax.json.JsonValue;
+
+import qowyn.ark.GameObject;
+import qowyn.ark.GameObjectContainer;
+import qowyn.ark.PropertyContainer;
+import qowyn.ark.properties.Property;
+import qowyn.ark.properties.PropertyBool;
+import qowyn.ark.properties.PropertyByte;
+import qowyn.ark.properties.PropertyDouble;
+import qowyn.ark.properties.PropertyFloat;
+import qowyn.ark.properties.PropertyInt;
+import qowyn.ark.properties.PropertyInt16;
+import qowyn.ark.properties.PropertyInt64;
+import qowyn.ark.properties.PropertyInt8;
+import qowyn.ark.properties.PropertyName;
+import qowyn.ark.properties.PropertyStr;
+import qowyn.ark.properties.PropertyUInt16;
+import qowyn.ark.properties.PropertyUInt32;
+import qowyn.ark.properties.PropertyUInt64;
+import qowyn.ark.types.ArkByteValue;
+import qowyn.ark.types.ArkName;
+import qowyn.ark.types.ObjectReference;
+
+/**
+ * One entry of a bulk edit file: a selector and a list of property assignments.
+ *
+ * <pre>
+ * {"edits": [{
+ *   "select": {"class": "Raptor_Character_BP_C", "team": [1234], "tamed": true},
+ *   "set": [
+ *     {"component": "MyCharacterStatusComponent", "property": "CurrentStatusValues", "index": 4, "value": 1000000.0},
+ *     {"property": "LastEnterStasisTime", "value": "$gameTime"}
+ *   ]
+ * }]}
+ * </pre>
+ *
+ * The special value {@code $gameTime} is replaced by the game time of the save.
+ * Missing properties are only added if the assignment has a {@code type}.
+ */
+public class BulkEdit {
+
+  private final Pattern classPattern;
+
+  private final Set<Integer> teams = new HashSet<>();
+
+  private final Boolean tamed;
+
+  private final boolean onlyCreatures;
+
+  private final List<Assignment> assignments = new ArrayList<>();
+
+  private BulkEdit(JsonObject object, float gameTime) {
+    JsonValue selectValue = object.get("select");
+    JsonObject select = expect(selectValue, "select", JsonValue.ValueType.OBJECT) ? (JsonObject) selectValue : Json.createObjectBuilder().build();
+
+    JsonValue classValue = select.get("class");
+    classPattern = expect(classValue, "class", JsonValue.ValueType.STRING) ? Pattern.compile(((JsonString) classValue).getString()) : null;
+
+    JsonValue teamValue = select.get("team");
+    if (expect(teamValue, "team", JsonValue.ValueType.NUMBER, JsonValue.ValueType.ARRAY)) {
+      if (teamValue instanceof JsonNumber) {
+        teams.add(((JsonNumber) teamValue).intValue());
+      } else {
+        for (JsonNumber team : ((JsonArray) teamValue).getValuesAs(JsonNumber.class)) {
+          teams.add(team.intValue());
+        }
+      }
+    }
+
+    JsonValue tamedValue = select.get("tamed");
+    tamed = expect(tamedValue, "tamed", JsonValue.ValueType.TRUE, JsonValue.ValueType.FALSE) ? tamedValue == JsonValue.TRUE : null;
+
+    onlyCreatures = tamed != null || select.getBoolean("creatures", false);
+
+    JsonValue setValue = object.get("set");
+    if (expect(setValue, "set", JsonValue.ValueType.ARRAY)) {
+      for (JsonObject assignment : ((JsonArray) setValue).getValuesAs(JsonObject.class)) {
+        assignments.add(new Assignment(assignment, gameTime));
+      }
+    }
+  }
+
+  /**
+   * Reads and compiles all edits of {@code object}.
+   */
+  public static List<BulkEdit> readJson(JsonObject object, float gameTime) {
+    List<BulkEdit> edits = new ArrayList<>();
+
+    JsonValue editsValue = object.get("edits");
+    if (expect(editsValue, "edits", JsonValue.ValueType.ARRAY)) {
+      for (JsonObject edit : ((JsonArray) editsValue).getValuesAs(JsonObject.class)) {
+        edits.add(new BulkEdit(edit, gameTime));
+      }
+    }
+
+    return edits;
+  }
+
+  public boolean matches(GameObject object, GameObjectContainer saveFile) {
+    if (onlyCreatures && !CreatureListCommands.onlyCreatures(object)) {
+      return false;
+    }
+
+    if (tamed != null && tamed != CommonFunctions.onlyTamed(object, saveFile)) {
+      return false;
+    }
+
+    if (classPattern != null && !classPattern.matcher(object.getClassString()).matches()) {
+      return false;
+    }
+
+    if (!teams.isEmpty() && !teams.contains(object.findPropertyValue("TargetingTeam", Integer.class).orElse(null))) {
+      return false;
+    }
+
+    return true;
+  }
+
+  /**
+   * @param patcher records all changed values if not null
+   * @return number of properties which have been set
+   */
+  public int apply(GameObject object, GameObjectContainer saveFile, SavePatcher patcher) {
+    int count = 0;
+
+    for (Assignment assignment : assignments) {
+      GameObject container = object;
+      if (assignment.component != null) {
+        ObjectReference reference = object.getPropertyValue(assignment.component, ObjectReference.class);
+        container = reference != null ? reference.getObject(saveFile) : null;
+      }
+
+      if (container == null) {
+        continue;
+      }
+
+      Property<?> property = assignment.apply(container);
+      if (property != null) {
+        count++;
+        if (patcher != null) {
+          patcher.record(container, property);
+        }
+      }
+    }
+
+    return count;
+  }
+
+  private static class Assignment {
+
+    private final String component;
+
+    private final String name;
+
+    private final int index;
+
+    private final Setter setter;
+
+    private final PropertyFactory factory;
+
+    public Assignment(JsonObject object, float gameTime) {
+      component = object.getString("component", null);
+      name = object.getString("property");
+      index = object.getInt("index", 0);
+
+      JsonValue value = object.get("value");
+      if (value == null) {
+        throw new IllegalArgumentException("Missing value for " + name);
+      }
+
+      switch (value.getValueType()) {
+        case NUMBER:
+          setter = numberSetter(((JsonNumber) value).doubleValue(), ((JsonNumber) value).longValue());
+          break;
+        case STRING:
+          String string = ((JsonString) value).getString();
+          setter = string.equals("$gameTime") ? numberSetter(gameTime, (long) gameTime) : stringSetter(string);
+          break;
+        case TRUE:
+        case FALSE:
+          boolean bool = value == JsonValue.TRUE;
+          setter = property -> {
+            if (property instanceof PropertyBool) {
+              ((PropertyBool) property).setValue(bool);
+              return true;
+            }
+            return false;
+          };
+          break;
+        default:
+          throw new IllegalArgumentException("Unsupported value type " + value.getValueType() + " for " + name);
+      }
+
+      String type = object.getString("type", null);
+      factory = type != null ? factory(type, name, index) : null;
+    }
+
+    /**
+     * @return the changed property or null
+     */
+    public Property<?> apply(PropertyContainer container) {
+      List<Property<?>> properties = container.getProperties();
+      for (Property<?> property : properties) {
+        if (property.getIndex() == index && property.getNameString().equals(name)) {
+          return setter.set(property) ? property : null;
+        }
+      }
+
+      if (factory != null) {
+        Property<?> property = factory.create();
+        if (setter.set(property)) {
+          properties.add(property);
+          return property;
+        }
+      }
+
+      return null;
+    }
+
+    private static Setter numberSetter(double doubleValue, long longValue) {
+      float floatValue = (float) doubleValue;
+      int intValue = (int) longValue;
+      short shortValue = (short) longValue;
+      byte byteValue = (byte) longValue;
+
+      return property -> {
+        if (property instanceof PropertyFloat) {
+          ((PropertyFloat) property).setValue(floatValue);
+        } else if (property instanceof PropertyDouble) {
+          ((PropertyDouble) property).setValue(doubleValue);
+        } else if (property instanceof PropertyInt) {
+          ((PropertyInt) property).setValue(intValue);
+        } else if (property instanceof PropertyUInt32) {
+          ((PropertyUInt32) property).setValue(intValue);
+        } else if (property instanceof PropertyInt64) {
+          ((PropertyInt64) property).setValue(longValue);
+        } else if (property instanceof PropertyUInt64) {
+          ((PropertyUInt64) property).setValue(longValue);
+        } else if (property instanceof PropertyInt16) {
+          ((PropertyInt16) property).setValue(shortValue);
+        } else if (property instanceof PropertyUInt16) {
+          ((PropertyUInt16) property).setValue(shortValue);
+        } else if (property instanceof PropertyInt8) {
+          ((PropertyInt8) property).setValue(byteValue);
+        } else if (property instanceof PropertyByte && !((PropertyByte) property).getValue().isFromEnum()) {
+          ((PropertyByte) property).setValue(new ArkByteValue(byteValue));
+        } else {
+          return false;
+        }
+        return true;
+      };
+    }
+
+    private static Setter stringSetter(String value) {
+      ArkName nameValue = ArkName.from(value);
+
+      return property -> {
+        if (property instanceof PropertyStr) {
+          ((PropertyStr) property).setValue(value);
+        } else if (property instanceof PropertyName) {
+          ((PropertyName) property).setValue(nameValue);
+        } else {
+          return false;
+        }
+        return true;
+      };
+    }
+
+    private static PropertyFactory factory(String type, String name, int index) {
+      switch (type) {
+        case "FloatProperty":
+          return () -> new PropertyFloat(name, index, 0.0f);
+        case "DoubleProperty":
+          return () -> new PropertyDouble(name, index, 0.0);
+        case "IntProperty":
+          return () -> new PropertyInt(name, index, 0);
+        case "UInt32Property":
+          return () -> new PropertyUInt32(name, index, 0);
+        case "Int64Property":
+          return () -> new PropertyInt64(name, index, 0L);
+        case "UInt64Property":
+          return () -> new PropertyUInt64(name, index, 0L);
+        case "Int16Property":
+          return () -> new PropertyInt16(name, index, (short) 0);
+        case "UInt16Property":
+          return () -> new PropertyUInt16(name, index, (short) 0);
+        case "Int8Property":
+          return () -> new PropertyInt8(name, index, (byte) 0);
+        case "ByteProperty":
+          return () -> new PropertyByte(name, index, (byte) 0);
+        case "BoolProperty":
+          return () -> new PropertyBool(name, index, false);
+        case "StrProperty":
+          return () -> new PropertyStr(name, index, "");
+        case "NameProperty":
+          return () -> new PropertyName(name, index, ArkName.from(""));
+        default:
+          throw new IllegalArgumentException("Unsupported property type " + type + " for " + name);
+      }
+    }
+
+  }
+
+  @FunctionalInterface
+  private interface Setter {
+
+    boolean set(Property<?> property);
+
+  }
+
+  @FunctionalInterface
+  private interface PropertyFactory {
+
+    Property<?> create();
+
+  }
+
+}
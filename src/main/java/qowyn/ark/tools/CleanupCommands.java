@@ -0,0 +1,381 @@
+package qowyn.ark.tools;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import joptsimple.OptionSet;
+import joptsimple.OptionSpec;
+import qowyn.ark.ArkSavegame;
+import qowyn.ark.GameObject;
+import qowyn.ark.arrays.ArkArray;
+import qowyn.ark.types.ArkName;
+import qowyn.ark.types.ObjectReference;
+
+public class CleanupCommands {
+
+  public static void gc(OptionHandler oh) {
+    OptionSpec<Void> dryRunSpec = oh.accepts("dry-run", "Only list what would be removed, NEW_SAVE is not needed.");
+
+    OptionSet options = oh.reparse();
+
+    List<String> params = oh.getParams(options);
+    boolean dryRun = options.has(dryRunSpec);
+    if (params.size() < 1 || params.size() > 2 || (!dryRun && params.size() != 2) || oh.wantsHelp()) {
+      oh.printCommandHelp();
+      System.exit(1);
+      return;
+    }
+
+    Path fileToRead = Paths.get(params.get(0)).toAbsolutePath();
+    Path fileToWrite = dryRun ? null : Paths.get(params.get(1)).toAbsolutePath();
+
+    if (fileToRead.equals(fileToWrite)) {
+      System.err.println("save and newsave need to be different paths");
+      System.exit(2);
+      return;
+    }
+
+    try {
+      Stopwatch stopwatch = new Stopwatch(oh.useStopwatch());
+
+      ArkSavegame savegame = new ArkSavegame(fileToRead.toString(), oh.readingOptions());
+
+      stopwatch.stop("Reading");
+
+      ObjectGraph graph = ObjectGraph.build(savegame.getObjects());
+
+      stopwatch.stop("Building reference graph");
+
+      ConcurrentBitSet reachable = graph.markReachable();
+
+      stopwatch.stop("Marking");
+
+      removeUnmarked(savegame, reachable, dryRun, oh, stopwatch);
+
+      if (!dryRun) {
+        savegame.writeBinary(fileToWrite.toString(), oh.writingOptions());
+
+        stopwatch.stop("Writing");
+      }
+
+      stopwatch.print();
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  public static void dedupe(OptionHandler oh) {
+    OptionSpec<Void> dryRunSpec = oh.accepts("dry-run", "Only list what would be removed, NEW_SAVE is not needed.");
+
+    OptionSet options = oh.reparse();
+
+    List<String> params = oh.getParams(options);
+    boolean dryRun = options.has(dryRunSpec);
+    if (params.size() < 1 || params.size() > 2 || (!dryRun && params.size() != 2) || oh.wantsHelp()) {
+      oh.printCommandHelp();
+      System.exit(1);
+      return;
+    }
+
+    Path fileToRead = Paths.get(params.get(0)).toAbsolutePath();
+    Path fileToWrite = dryRun ? null : Paths.get(params.get(1)).toAbsolutePath();
+
+    if (fileToRead.equals(fileToWrite)) {
+      System.err.println("save and newsave need to be different paths");
+      System.exit(2);
+      return;
+    }
+
+    try {
+      Stopwatch stopwatch = new Stopwatch(oh.useStopwatch());
+
+      ArkSavegame savegame = new ArkSavegame(fileToRead.toString(), oh.readingOptions());
+      List<GameObject> objects = savegame.getObjects();
+
+      stopwatch.stop("Reading");
+
+      // Id of the first object with the same names for each duplicate, -1 otherwise
+      int[] originals = new int[objects.size()];
+      IntList duplicates = new IntList();
+      Map<List<ArkName>, Integer> nameMap = new HashMap<>(objects.size() * 2);
+
+      for (int index = 0; index < objects.size(); index++) {
+        Integer original = nameMap.putIfAbsent(objects.get(index).getNames(), index);
+        if (original != null) {
+          originals[index] = original;
+          duplicates.add(index);
+        } else {
+          originals[index] = -1;
+        }
+      }
+
+      stopwatch.stop("Finding duplicates");
+
+      if (duplicates.isEmpty()) {
+        if (!oh.isQuiet()) {
+          System.out.println("No duplicates found");
+        }
+        return;
+      }
+
+      objects.parallelStream().forEach(object -> redirectDuplicates(object, originals));
+
+      stopwatch.stop("Redirecting references");
+
+      ObjectGraph graph = ObjectGraph.build(objects);
+
+      stopwatch.stop("Building reference graph");
+
+      // Everything reachable from duplicates is a candidate, it stays if anything else still refers to it
+      ConcurrentBitSet fromDuplicates = graph.markReachable(duplicates.toArray());
+      // Other actors referenced by duplicates are no candidates
+      int[] roots = IntStream.range(0, objects.size()).filter(index -> originals[index] == -1 && (!fromDuplicates.get(index) || graph.isRoot(index))).toArray();
+      ConcurrentBitSet keep = graph.markReachable(roots);
+
+      stopwatch.stop("Marking");
+
+      removeUnmarked(savegame, keep, dryRun, oh, stopwatch);
+
+      if (!dryRun) {
+        savegame.writeBinary(fileToWrite.toString(), oh.writingOptions());
+
+        stopwatch.stop("Writing");
+      }
+
+      stopwatch.print();
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  public static void wipe(OptionHandler oh) {
+    OptionSpec<String> classSpec = oh.accepts("class", "Only wipe objects with a class name matching <regex>, can be repeated.").withRequiredArg().describedAs("regex");
+    OptionSpec<Integer> teamSpec = oh.accepts("team", "Only wipe objects of the given tribe/team, items belong to the team of their inventory owner. Can be repeated.").withRequiredArg().ofType(Integer.class).describedAs("team");
+    OptionSpec<Void> creaturesSpec = oh.accepts("creatures", "Wipe creatures.");
+    OptionSpec<Void> structuresSpec = oh.accepts("structures", "Wipe structures.");
+    OptionSpec<Void> itemsSpec = oh.accepts("items", "Wipe items.");
+    OptionSpec<Void> wildSpec = oh.accepts("wild", "Only wipe wild creatures, implies --creatures.");
+    OptionSpec<Void> tamedSpec = oh.accepts("tamed", "Only wipe tamed creatures, implies --creatures.");
+    OptionSpec<Void> dryRunSpec = oh.accepts("dry-run", "Only list what would be removed, NEW_SAVE is not needed.");
+
+    OptionSet options = oh.reparse();
+
+    List<String> params = oh.getParams(options);
+    boolean dryRun = options.has(dryRunSpec);
+    boolean hasPredicate = options.has(classSpec) || options.has(teamSpec) || options.has(creaturesSpec) || options.has(structuresSpec) || options.has(itemsSpec) || options.has(wildSpec) || options.has(tamedSpec);
+    if (params.size() < 1 || params.size() > 2 || (!dryRun && params.size() != 2) || !hasPredicate || oh.wantsHelp()) {
+      if (!hasPredicate) {
+        System.err.println("At least one of --class, --team, --creatures, --structures, --items, --wild or --tamed is required.");
+      }
+      oh.printCommandHelp();
+      System.exit(1);
+      return;
+    }
+
+    Path fileToRead = Paths.get(params.get(0)).toAbsolutePath();
+    Path fileToWrite = dryRun ? null : Paths.get(params.get(1)).toAbsolutePath();
+
+    if (fileToRead.equals(fileToWrite)) {
+      System.err.println("save and newsave need to be different paths");
+      System.exit(2);
+      return;
+    }
+
+    List<Pattern> classPatterns = options.valuesOf(classSpec).stream().map(Pattern::compile).collect(Collectors.toList());
+    Set<Integer> teams = new HashSet<>(options.valuesOf(teamSpec));
+    boolean wipeCreatures = options.has(creaturesSpec) || options.has(wildSpec) || options.has(tamedSpec);
+    boolean anyKind = wipeCreatures || options.has(structuresSpec) || options.has(itemsSpec);
+
+    try {
+      Stopwatch stopwatch = new Stopwatch(oh.useStopwatch());
+
+      ArkSavegame savegame = new ArkSavegame(fileToRead.toString(), oh.readingOptions());
+      List<GameObject> objects = savegame.getObjects();
+
+      stopwatch.stop("Reading");
+
+      // Items have no team of their own, they belong to the team of the actor holding their inventory
+      Map<List<ArkName>, GameObject> actorsByName = teams.isEmpty() ? null : objects.stream()
+          .filter(object -> !object.isItem())
+          .collect(Collectors.toMap(GameObject::getNames, object -> object, (a, b) -> a));
+
+      Predicate<GameObject> predicate = object -> {
+        if (anyKind) {
+          boolean creature = CreatureListCommands.onlyCreatures(object);
+          if (!(wipeCreatures && creature || options.has(structuresSpec) && isStructure(object) || options.has(itemsSpec) && object.isItem())) {
+            return false;
+          }
+
+          if (creature && options.has(wildSpec) && !CommonFunctions.onlyWild(object, savegame)) {
+            return false;
+          }
+
+          if (creature && options.has(tamedSpec) && !CommonFunctions.onlyTamed(object, savegame)) {
+            return false;
+          }
+        }
+
+        if (!classPatterns.isEmpty() && classPatterns.stream().noneMatch(pattern -> pattern.matcher(object.getClassString()).matches())) {
+          return false;
+        }
+
+        if (!teams.isEmpty() && !teams.contains(teamOf(object, objects, actorsByName))) {
+          return false;
+        }
+
+        return true;
+      };
+
+      ConcurrentBitSet matched = new ConcurrentBitSet(objects.size());
+      IntStream.range(0, objects.size()).parallel().filter(index -> predicate.test(objects.get(index))).forEach(matched::set);
+
+      stopwatch.stop("Matching");
+
+      if (!oh.isQuiet()) {
+        System.out.println("Matched " + matched.cardinality() + " objects");
+      }
+
+      ObjectGraph graph = ObjectGraph.build(objects);
+
+      stopwatch.stop("Building reference graph");
+
+      // Components and items of matched objects go too, unless something else still refers to them
+      int[] matchedIds = IntStream.range(0, objects.size()).filter(matched::get).toArray();
+      ConcurrentBitSet fromMatched = graph.markReachable(matchedIds);
+      int[] roots = IntStream.range(0, objects.size()).filter(index -> !fromMatched.get(index) || graph.isRoot(index)).toArray();
+      ConcurrentBitSet keep = graph.markReachable(roots, matched);
+
+      stopwatch.stop("Marking");
+
+      removeUnmarked(savegame, keep, dryRun, oh, stopwatch);
+
+      if (!dryRun) {
+        savegame.writeBinary(fileToWrite.toString(), oh.writingOptions());
+
+        stopwatch.stop("Writing");
+      }
+
+      stopwatch.print();
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  /**
+   * @return team of {@code object}, for items the team of the actor owning their inventory, null if there is none
+   */
+  private static Integer teamOf(GameObject object, List<GameObject> objects, Map<List<ArkName>, GameObject> actorsByName) {
+    if (!object.isItem()) {
+      return object.findPropertyValue("TargetingTeam", Integer.class).orElse(null);
+    }
+
+    ObjectReference inventoryReference = object.getPropertyValue("OwnerInventory", ObjectReference.class);
+    if (inventoryReference == null || inventoryReference.getObjectType() != ObjectReference.TYPE_ID
+        || inventoryReference.getObjectId() < 0 || inventoryReference.getObjectId() >= objects.size()) {
+      return null;
+    }
+
+    // Inventory components are named after their owner, the owner is the rest of the name chain
+    List<ArkName> inventoryNames = objects.get(inventoryReference.getObjectId()).getNames();
+    if (inventoryNames.size() < 2) {
+      return null;
+    }
+
+    GameObject owner = actorsByName.get(inventoryNames.subList(1, inventoryNames.size()));
+    return owner != null ? owner.findPropertyValue("TargetingTeam", Integer.class).orElse(null) : null;
+  }
+
+  private static boolean isStructure(GameObject object) {
+    return !object.isItem() && object.getNames().size() == 1 && object.getLocation() != null && object.hasAnyProperty("TargetingTeam") && !CreatureListCommands.onlyCreatures(object)
+        && !object.getClassString().startsWith("PlayerPawn");
+  }
+
+  /**
+   * Points all references to duplicates at the original object instead.
+   */
+  private static void redirectDuplicates(GameObject object, int[] originals) {
+    ReferenceWalker.walk(object, new ReferenceWalker.ReferenceVisitor() {
+      @Override
+      public void visit(ObjectReference reference) {
+        int original = originalOf(reference, originals);
+        if (original != -1) {
+          reference.setObjectId(original);
+        }
+      }
+
+      @Override
+      public void visitArray(ArkArray<ObjectReference> references) {
+        // Arrays like InventoryItems usually list the original too, don't list it twice
+        Set<Integer> present = new HashSet<>();
+        for (ObjectReference reference : references) {
+          if (originalOf(reference, originals) == -1 && reference.getObjectType() == ObjectReference.TYPE_ID) {
+            present.add(reference.getObjectId());
+          }
+        }
+
+        references.removeIf(reference -> {
+          int original = originalOf(reference, originals);
+          return original != -1 && !present.add(original);
+        });
+        references.forEach(this::visit);
+      }
+    });
+  }
+
+  private static int originalOf(ObjectReference reference, int[] originals) {
+    if (reference == null || reference.getObjectType() != ObjectReference.TYPE_ID || reference.getObjectId() < 0 || reference.getObjectId() >= originals.length) {
+      return -1;
+    }
+
+    return originals[reference.getObjectId()];
+  }
+
+  /**
+   * Reports all objects without a bit in {@code keep} and removes them from {@code savegame} unless {@code dryRun} is set.
+   */
+  protected static void removeUnmarked(ArkSavegame savegame, ConcurrentBitSet keep, boolean dryRun, OptionHandler oh, Stopwatch stopwatch) {
+    List<GameObject> objects = savegame.getObjects();
+
+    if (dryRun || oh.isVerbose()) {
+      Map<String, Integer> removedClasses = new TreeMap<>();
+      for (int index = 0; index < objects.size(); index++) {
+        if (!keep.get(index)) {
+          removedClasses.merge(objects.get(index).getClassString(), 1, Integer::sum);
+        }
+      }
+
+      removedClasses.forEach((className, count) -> System.out.println(className + ": " + count));
+    }
+
+    if (dryRun) {
+      if (!oh.isQuiet()) {
+        System.out.println("Would remove " + (objects.size() - keep.cardinality()) + " of " + objects.size() + " objects");
+      }
+      return;
+    }
+
+    ObjectCompactor compactor = new ObjectCompactor(objects, keep);
+    List<GameObject> remaining = compactor.compact();
+
+    if (!oh.isQuiet()) {
+      System.out.println("Removed " + compactor.getRemovedCount() + " of " + objects.size() + " objects");
+    }
+
+    objects.clear();
+    objects.addAll(remaining);
+
+    stopwatch.stop("Compacting");
+  }
+
+}
@@ -6,6 +6,8 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.file.Path;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.Executors;
@@ -29,6 +31,7 @@ import com.lmax.disruptor.dsl.ProducerType;
 
 import qowyn.ark.GameObject;
 import qowyn.ark.GameObjectContainer;
+import qowyn.ark.PropertyContainer;
 import qowyn.ark.types.ObjectReference;
 
 public class CommonFunctions {
@@ -63,6 +66,20 @@ public class CommonFunctions {
     return baseLevel + extraLevel;
   }
 
+  /**
+   * Combines DinoID1 and DinoID2 into the 64-bit id shown ingame, 0 if the object has no DinoID.
+   */
+  public static long getDinoId(PropertyContainer creature) {
+    int dinoID1 = creature.findPropertyValue("DinoID1", Integer.class).orElse(0);
+    int dinoID2 = creature.findPropertyValue("DinoID2", Integer.class).orElse(0);
+    return (long) dinoID1 << Integer.SIZE | (dinoID2 & 0xFFFFFFFFL);
+  }
+
+  // Looking up the JSON provider is expensive, factories are thread safe and shared by all writers
+  private static final JsonGeneratorFactory GENERATOR_FACTORY = Json.createGeneratorFactory(null);
+
+  private static final JsonGeneratorFactory PRETTY_GENERATOR_FACTORY = Json.createGeneratorFactory(Collections.singletonMap(JsonGenerator.PRETTY_PRINTING, true));
+
   public static void writeJson(OutputStream out, JsonStructure structure, OptionHandler oh) throws IOException {
     if (out == null) {
       throw new NullPointerException();
@@ -90,22 +107,17 @@ public class CommonFunctions {
   }
 
   public static void writeJson(OutputStream out, Consumer<JsonGenerator> writeJson, OptionHandler oh) throws IOException {
+    writeJson(out, writeJson, oh.usePretty());
+  }
+
+  public static void writeJson(OutputStream out, Consumer<JsonGenerator> writeJson, boolean pretty) throws IOException {
     if (out == null) {
       throw new NullPointerException();
     }
 
-    if (oh.usePretty()) {
-      Map<String, Object> properties = new HashMap<>(1);
-      properties.put(JsonGenerator.PRETTY_PRINTING, true);
-
-      JsonGeneratorFactory jgf = Json.createGeneratorFactory(properties);
-      try (JsonGenerator jg = jgf.createGenerator(out)) {
-        writeJson.accept(jg);
-      }
-    } else {
-      try (JsonGenerator jg = Json.createGenerator(out)) {
-        writeJson.accept(jg);
-      }
+    JsonGeneratorFactory jgf = pretty ? PRETTY_GENERATOR_FACTORY : GENERATOR_FACTORY;
+    try (JsonGenerator jg = jgf.createGenerator(out)) {
+      writeJson.accept(jg);
     }
   }
 
@@ -115,6 +127,18 @@ public class CommonFunctions {
     }
   }
 
+  /**
+   * Writes to {@code outFile} only if the generated content differs from the current file, replacing it atomically.
+   * Content is generated in memory, not meant for huge files.
+   *
+   * @return true if {@code outFile} has been written
+   */
+  public static boolean writeJsonIfChanged(Path outFile, Consumer<JsonGenerator> writeJson, OptionHandler oh) throws IOException {
+    HashingOutputStream out = new HashingOutputStream();
+    writeJson(out, writeJson, oh);
+    return out.writeIfChanged(outFile);
+  }
+
   public static JsonStructure readJson(InputStream stream) throws IOException {
     if (stream == null) {
       throw new NullPointerException();
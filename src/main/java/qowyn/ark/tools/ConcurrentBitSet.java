@@ -0,0 +1,64 @@
+package qowyn.ark.tools;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Fixed size bitset which can be modified by multiple threads at once.
+ */
+public class ConcurrentBitSet {
+
+  private final AtomicLongArray words;
+
+  private final int size;
+
+  public ConcurrentBitSet(int size) {
+    this.size = size;
+    this.words = new AtomicLongArray((size + Long.SIZE - 1) / Long.SIZE);
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public boolean get(int index) {
+    return (words.get(index >>> 6) & (1L << index)) != 0;
+  }
+
+  /**
+   * Sets the bit at {@code index}.
+   *
+   * @return true if this call changed the bit, false if it was already set
+   */
+  public boolean set(int index) {
+    int wordIndex = index >>> 6;
+    long mask = 1L << index;
+
+    while (true) {
+      long word = words.get(wordIndex);
+      if ((word & mask) != 0) {
+        return false;
+      }
+      if (words.compareAndSet(wordIndex, word, word | mask)) {
+        return true;
+      }
+    }
+  }
+
+  /**
+   * Clears all bits which are set in {@code other}, not safe to use while other threads modify either set.
+   */
+  public void andNot(ConcurrentBitSet other) {
+    for (int i = 0; i < Math.min(words.length(), other.words.length()); i++) {
+      words.set(i, words.get(i) & ~other.words.get(i));
+    }
+  }
+
+  public int cardinality() {
+    int count = 0;
+    for (int i = 0; i < words.length(); i++) {
+      count += Long.bitCount(words.get(i));
+    }
+    return count;
+  }
+
+}
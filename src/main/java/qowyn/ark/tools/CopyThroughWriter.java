@@ -0,0 +1,521 @@
+package qowyn.ark.tools;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+import qowyn.ark.ArkArchive;
+import qowyn.ark.ArkSavegame;
+import qowyn.ark.GameObject;
+
+/**
+ * Writes a modified savegame by copying everything which hasn't changed straight from the source file.
+ *
+ * The name table of the source is kept and only extended by new names, so headers and property blocks of
+ * untouched objects stay valid byte for byte and only their properties offset gets adjusted. Objects marked
+ * dirty and objects which haven't been part of the source are encoded by the savegame toolkit.
+ *
+ * Has to be created right after reading the save, before any object gets changed. Only saves with a name
+ * table and the usual layout of objects, name table and property block are supported, the caller has to
+ * write the whole save if {@link #isSupported()} returns false.
+ */
+public class CopyThroughWriter {
+
+  /**
+   * UUID, class name, isItem, name count, fromDataFile, dataFileIndex, hasLocation, propertiesOffset, zero
+   */
+  private static final int HEADER_FIXED_SIZE = 16 + 8 + 4 + 4 + 4 + 4 + 4 + 4 + 4;
+
+  private static final int LOCATION_SIZE = 6 * Float.BYTES;
+
+  private static final int NAME_SIZE = 8;
+
+  private final ArkSavegame savegame;
+
+  private final Set<GameObject> dirty = Collections.synchronizedSet(Collections.newSetFromMap(new IdentityHashMap<>()));
+
+  private String unsupportedReason;
+
+  private ByteBuffer source;
+
+  private short saveVersion;
+
+  private int hibernationOffset;
+
+  private int nameTableOffset;
+
+  private int nameTableEnd;
+
+  private int propertiesBlockOffset;
+
+  private int propertiesEnd;
+
+  /**
+   * Position of the first object header, the object count comes right before it
+   */
+  private int objectsStart;
+
+  private int objectsEnd;
+
+  private List<String> nameTable;
+
+  /**
+   * Objects of the source in their original order, header positions and property sizes use the same index
+   */
+  private GameObject[] sourceObjects;
+
+  private int[] headerOffsets;
+
+  private int[] propertiesSizes;
+
+  private LongIntHashMap sourceIndex;
+
+  public CopyThroughWriter(ArkSavegame savegame, Path sourceFile) throws IOException {
+    this.savegame = savegame;
+
+    try (FileChannel channel = FileChannel.open(sourceFile, StandardOpenOption.READ)) {
+      if (channel.size() > Integer.MAX_VALUE) {
+        unsupportedReason = "source is larger than 2 GiB";
+        return;
+      }
+
+      source = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    try {
+      unsupportedReason = readLayout();
+    } catch (RuntimeException ex) {
+      // Anything unexpected in the source means our idea of the layout is wrong
+      unsupportedReason = "unexpected layout (" + ex + ")";
+    }
+
+    if (unsupportedReason != null) {
+      source = null;
+      sourceObjects = null;
+      sourceIndex = null;
+    }
+  }
+
+  public boolean isSupported() {
+    return unsupportedReason == null;
+  }
+
+  /**
+   * @return why the source can't be copied through, null if it can
+   */
+  public String getUnsupportedReason() {
+    return unsupportedReason;
+  }
+
+  /**
+   * Marks {@code object} as changed, its header and properties get encoded again. Objects which haven't
+   * been part of the source don't need to be marked. Can be called from multiple threads.
+   */
+  public void markDirty(GameObject object) {
+    dirty.add(object);
+  }
+
+  private String readLayout() {
+    saveVersion = source.getShort(0);
+    if (saveVersion < 6) {
+      return "save version " + saveVersion + " has no name table";
+    }
+
+    int position = Short.BYTES;
+    if (saveVersion > 6) {
+      hibernationOffset = source.getInt(position);
+      position += Integer.BYTES * 2;
+    }
+    nameTableOffset = source.getInt(position);
+    propertiesBlockOffset = source.getInt(position + Integer.BYTES);
+
+    if (propertiesBlockOffset != savegame.getPropertiesBlockOffset()) {
+      return "properties block offset doesn't match";
+    }
+
+    List<GameObject> objects = savegame.getObjects();
+    int size = objects.size();
+    sourceObjects = objects.toArray(new GameObject[size]);
+
+    // Object headers end either at the name table or at the hibernation data in front of it
+    long headersSize = 0;
+    for (GameObject object : sourceObjects) {
+      headersSize += object.getSize(true);
+    }
+
+    headerOffsets = new int[size + 1];
+    String reason = findHeaders(nameTableOffset, headersSize);
+    if (reason != null && hibernationOffset > 0 && hibernationOffset < nameTableOffset) {
+      reason = findHeaders(hibernationOffset, headersSize);
+    }
+    if (reason != null) {
+      return reason;
+    }
+
+    ArkArchive archive = new ArkArchive(source.duplicate().order(ByteOrder.LITTLE_ENDIAN));
+    archive.position(nameTableOffset);
+    int nameCount = archive.getInt();
+    nameTable = new ArrayList<>(nameCount);
+    for (int i = 0; i < nameCount; i++) {
+      nameTable.add(archive.getString());
+    }
+    nameTableEnd = archive.position();
+
+    if (nameTableEnd > propertiesBlockOffset) {
+      return "name table doesn't end before the properties block";
+    }
+
+    // Each property block reaches up to the next one, only the size of the last one has to be calculated
+    long[] byOffset = new long[size];
+    sourceIndex = new LongIntHashMap(Math.max(16, size * 2), -1);
+    for (int index = 0; index < size; index++) {
+      int offset = sourceObjects[index].getPropertiesOffset();
+      if (offset < 0 || sourceIndex.put(offset, index) != -1) {
+        return "properties offset " + offset + " is invalid or used twice";
+      }
+      byOffset[index] = (long) offset << Integer.SIZE | index;
+    }
+    Arrays.parallelSort(byOffset);
+
+    propertiesSizes = new int[size];
+    long end = propertiesBlockOffset;
+    for (int i = 0; i < size; i++) {
+      int index = (int) byOffset[i];
+      long offset = byOffset[i] >>> Integer.SIZE;
+      long next = i + 1 < size ? byOffset[i + 1] >>> Integer.SIZE : offset + sourceObjects[index].getPropertiesSize(true);
+      propertiesSizes[index] = (int) (next - offset);
+      end = propertiesBlockOffset + next;
+    }
+
+    if (end > source.limit()) {
+      return "properties block exceeds the file";
+    }
+    propertiesEnd = (int) end;
+
+    if (hibernationOffset > 0 && !(hibernationOffset < objectsStart - Integer.BYTES || hibernationOffset >= objectsEnd && hibernationOffset <= nameTableOffset
+        || hibernationOffset >= nameTableEnd && hibernationOffset <= propertiesBlockOffset || hibernationOffset >= propertiesEnd)) {
+      return "hibernation data overlaps objects, names or properties";
+    }
+
+    return null;
+  }
+
+  /**
+   * Walks the object headers ending at {@code end}, checking each against the already read object.
+   *
+   * @return null if all headers match, otherwise what didn't
+   */
+  private String findHeaders(int end, long headersSize) {
+    long start = end - headersSize;
+    if (start < Integer.BYTES || source.getInt((int) start - Integer.BYTES) != sourceObjects.length) {
+      return "object headers not found";
+    }
+
+    int position = (int) start;
+    for (int index = 0; index < sourceObjects.length; index++) {
+      headerOffsets[index] = position;
+
+      int nameCount = source.getInt(position + 16 + NAME_SIZE + 4);
+      if (nameCount < 0 || nameCount > (end - position) / NAME_SIZE) {
+        return "object headers not found";
+      }
+
+      position += HEADER_FIXED_SIZE - Integer.BYTES * 3 + nameCount * NAME_SIZE;
+      if (source.getInt(position) != 0) {
+        position += LOCATION_SIZE;
+      }
+      position += Integer.BYTES;
+
+      if (source.getInt(position) != sourceObjects[index].getPropertiesOffset()) {
+        return "object headers not found";
+      }
+      position += Integer.BYTES * 2;
+    }
+
+    if (position != end) {
+      return "object headers not found";
+    }
+
+    headerOffsets[sourceObjects.length] = position;
+    objectsStart = (int) start;
+    objectsEnd = end;
+    return null;
+  }
+
+  /**
+   * @return index of {@code object} in the source or -1 if it has been added or changed since
+   */
+  private int cleanIndex(GameObject object) {
+    if (dirty.contains(object)) {
+      return -1;
+    }
+
+    int index = sourceIndex.get(object.getPropertiesOffset());
+    return index != -1 && sourceObjects[index] == object ? index : -1;
+  }
+
+  /**
+   * Writes the current state of the savegame to {@code target}, replacing it once complete.
+   */
+  public void write(Path target) throws IOException {
+    if (!isSupported()) {
+      throw new IllegalStateException("Can't copy through: " + unsupportedReason);
+    }
+
+    List<GameObject> objects = savegame.getObjects();
+    int size = objects.size();
+    int[] cleanIndices = new int[size];
+
+    // Names used by re-encoded objects get appended, existing indices stay valid
+    Set<String> knownNames = new HashSet<>(nameTable);
+    List<String> newNames = new ArrayList<>();
+    long headersSize = 0;
+    long propertiesSize = 0;
+    int[] propertiesOffsets = new int[size];
+
+    for (int index = 0; index < size; index++) {
+      GameObject object = objects.get(index);
+      int cleanIndex = cleanIndex(object);
+      cleanIndices[index] = cleanIndex;
+      propertiesOffsets[index] = (int) propertiesSize;
+
+      if (cleanIndex != -1) {
+        headersSize += headerOffsets[cleanIndex + 1] - headerOffsets[cleanIndex];
+        propertiesSize += propertiesSizes[cleanIndex];
+      } else {
+        object.collectNames(name -> {
+          if (knownNames.add(name.getName())) {
+            newNames.add(name.getName());
+          }
+        });
+        headersSize += object.getSize(true);
+        propertiesSize += object.getPropertiesSize(true);
+      }
+
+      if (propertiesSize > Integer.MAX_VALUE) {
+        throw new IOException("Properties exceed 2 GiB");
+      }
+    }
+
+    long newNamesSize = 0;
+    for (String name : newNames) {
+      newNamesSize += stringSize(name);
+    }
+
+    // How far everything behind the headers, the name table and the properties moves
+    long headersDelta = objectsStart + headersSize - objectsEnd;
+    long namesDelta = headersDelta + newNamesSize;
+    long propertiesDelta = propertiesBlockOffset + namesDelta + propertiesSize - propertiesEnd;
+    long totalSize = source.limit() + propertiesDelta;
+    if (totalSize > Integer.MAX_VALUE) {
+      throw new IOException("Savegame would exceed 2 GiB");
+    }
+
+    int newPropertiesBlockOffset = (int) (propertiesBlockOffset + namesDelta);
+
+    Path temp = AtomicFiles.createTempSibling(target);
+    try {
+      try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+        MappedByteBuffer out = channel.map(FileChannel.MapMode.READ_WRITE, 0, totalSize);
+        out.order(ByteOrder.LITTLE_ENDIAN);
+
+        Copier copier = new Copier(source, out);
+
+        // Everything up to the object headers, only offsets and the object count change
+        copier.copy(0, 0, objectsStart);
+        copier.flush();
+        int position = Short.BYTES;
+        if (saveVersion > 6) {
+          out.putInt(position, (int) shift(hibernationOffset, headersDelta, namesDelta, propertiesDelta));
+          position += Integer.BYTES * 2;
+        }
+        out.putInt(position, (int) (nameTableOffset + headersDelta));
+        out.putInt(position + Integer.BYTES, newPropertiesBlockOffset);
+        out.putInt(objectsStart - Integer.BYTES, size);
+
+        ArkArchive archive = new ArkArchive(out.duplicate().order(ByteOrder.LITTLE_ENDIAN));
+        List<String> names = new ArrayList<>(nameTable);
+        names.addAll(newNames);
+        archive.setNameTable(names);
+
+        // Object headers
+        int[] headerPositions = new int[size];
+        position = objectsStart;
+        for (int index = 0; index < size; index++) {
+          int cleanIndex = cleanIndices[index];
+          headerPositions[index] = position;
+
+          if (cleanIndex != -1) {
+            int length = headerOffsets[cleanIndex + 1] - headerOffsets[cleanIndex];
+            copier.copy(headerOffsets[cleanIndex], position, length);
+            position += length;
+          } else {
+            GameObject object = objects.get(index);
+            archive.position(position);
+            object.writeBinary(archive, propertiesOffsets[index]);
+            position += object.getSize(true);
+            checkPosition(archive, position, object);
+          }
+        }
+        copier.flush();
+
+        for (int index = 0; index < size; index++) {
+          int cleanIndex = cleanIndices[index];
+          if (cleanIndex != -1) {
+            int length = headerOffsets[cleanIndex + 1] - headerOffsets[cleanIndex];
+            out.putInt(headerPositions[index] + length - Integer.BYTES * 2, propertiesOffsets[index]);
+          }
+        }
+
+        // Whatever lies between headers and name table, then the name table with the new names appended
+        copier.copy(objectsEnd, position, nameTableOffset - objectsEnd);
+        position += nameTableOffset - objectsEnd;
+        out.putInt(position, nameTable.size() + newNames.size());
+        copier.copy(nameTableOffset + Integer.BYTES, position + Integer.BYTES, nameTableEnd - nameTableOffset - Integer.BYTES);
+        copier.flush();
+        position += nameTableEnd - nameTableOffset;
+        for (String name : newNames) {
+          position = putString(out, position, name);
+        }
+        copier.copy(nameTableEnd, position, propertiesBlockOffset - nameTableEnd);
+        position += propertiesBlockOffset - nameTableEnd;
+
+        // Property blocks, untouched ones are mostly contiguous and end up as a few large copies
+        for (int index = 0; index < size; index++) {
+          int cleanIndex = cleanIndices[index];
+          if (cleanIndex != -1) {
+            copier.copy(propertiesBlockOffset + sourceObjects[cleanIndex].getPropertiesOffset(), newPropertiesBlockOffset + propertiesOffsets[index], propertiesSizes[cleanIndex]);
+          } else {
+            GameObject object = objects.get(index);
+            object.writeProperties(archive, newPropertiesBlockOffset);
+            checkPosition(archive, newPropertiesBlockOffset + propertiesOffsets[index] + object.getPropertiesSize(true), object);
+          }
+        }
+
+        // Hibernation data or whatever else follows the properties
+        copier.copy(propertiesEnd, (int) (propertiesEnd + propertiesDelta), source.limit() - propertiesEnd);
+        copier.flush();
+
+        out.force();
+      }
+
+      AtomicFiles.replace(temp, target);
+    } catch (IOException | RuntimeException ex) {
+      Files.deleteIfExists(temp);
+      throw ex;
+    }
+  }
+
+  private long shift(int offset, long headersDelta, long namesDelta, long propertiesDelta) {
+    if (offset <= 0 || offset < objectsStart) {
+      return offset;
+    } else if (offset <= nameTableOffset) {
+      return offset + headersDelta;
+    } else if (offset <= propertiesBlockOffset) {
+      return offset + namesDelta;
+    } else {
+      return offset + propertiesDelta;
+    }
+  }
+
+  private static void checkPosition(ArkArchive archive, int expected, GameObject object) throws IOException {
+    if (archive.position() != expected) {
+      throw new IOException("Size of " + object.getNames() + " doesn't match what has been written");
+    }
+  }
+
+  /**
+   * Size of a string as the savegame stores it: length, characters and terminator, UTF-16 if not ASCII.
+   */
+  private static int stringSize(String value) {
+    if (value.isEmpty()) {
+      return Integer.BYTES;
+    }
+
+    boolean ascii = value.chars().allMatch(c -> c < 0x80);
+    return Integer.BYTES + (value.length() + 1) * (ascii ? 1 : 2);
+  }
+
+  private static int putString(ByteBuffer out, int position, String value) {
+    if (value.isEmpty()) {
+      out.putInt(position, 0);
+      return position + Integer.BYTES;
+    }
+
+    boolean ascii = value.chars().allMatch(c -> c < 0x80);
+    byte[] bytes = value.getBytes(ascii ? StandardCharsets.US_ASCII : StandardCharsets.UTF_16LE);
+    out.putInt(position, ascii ? value.length() + 1 : -(value.length() + 1));
+    position += Integer.BYTES;
+
+    ByteBuffer target = out.duplicate();
+    target.position(position);
+    target.put(bytes);
+    position += bytes.length;
+
+    int terminator = ascii ? 1 : 2;
+    for (int i = 0; i < terminator; i++) {
+      out.put(position++, (byte) 0);
+    }
+
+    return position;
+  }
+
+  /**
+   * Copies ranges of the source, merging adjacent ranges into a single copy.
+   */
+  private static class Copier {
+
+    private final ByteBuffer from;
+
+    private final ByteBuffer to;
+
+    private int sourceStart;
+
+    private int targetStart;
+
+    private int length;
+
+    public Copier(ByteBuffer from, ByteBuffer to) {
+      this.from = from.duplicate();
+      this.to = to.duplicate();
+    }
+
+    public void copy(int sourcePosition, int targetPosition, int size) {
+      if (length > 0 && sourcePosition == sourceStart + length && targetPosition == targetStart + length) {
+        length += size;
+        return;
+      }
+
+      flush();
+      sourceStart = sourcePosition;
+      targetStart = targetPosition;
+      length = size;
+    }
+
+    public void flush() {
+      if (length > 0) {
+        from.clear();
+        from.position(sourceStart).limit(sourceStart + length);
+        to.clear();
+        to.position(targetStart);
+        to.put(from);
+      }
+      length = 0;
+    }
+
+  }
+
+}
@@ -2,20 +2,25 @@ package qowyn.ark.tools;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
 import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.IntSummaryStatistics;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentMap;
 import java.util.function.BiPredicate;
 import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 import java.util.stream.Stream;
 
 import javax.json.Json;
@@ -28,7 +33,16 @@ import joptsimple.OptionSet;
 import joptsimple.OptionSpec;
 import qowyn.ark.ArkSavegame;
 import qowyn.ark.GameObject;
+import qowyn.ark.GameObjectContainer;
+import qowyn.ark.PropertyContainer;
 import qowyn.ark.ReadingOptions;
+import qowyn.ark.arrays.ArkArrayStruct;
+import qowyn.ark.arrays.ArkArrayUInt8;
+import qowyn.ark.structs.Struct;
+import qowyn.ark.structs.StructPropertyList;
+import qowyn.ark.types.ArkName;
+import qowyn.ark.types.LocationData;
+import qowyn.ark.types.ObjectReference;
 
 public class CreatureListCommands {
 
@@ -36,7 +50,7 @@ public class CreatureListCommands {
 
   private static OptionHandler optionHandler;
 
-  private static Path outputDirectory;
+  private static OutputSink sink;
 
   private static OptionSpec<Void> untameableSpec;
 
@@ -48,6 +62,22 @@ public class CreatureListCommands {
 
   private static OptionSpec<Void> writeAllFieldsSpec;
 
+  private static OptionSpec<Void> includeCryopodsSpec;
+
+  private static OptionSpec<Void> watchSpec;
+
+  private static OptionSpec<String> outputFormatSpec;
+
+  /**
+   * Containers of creatures decoded from cryopods, all other creatures belong to saveFile
+   */
+  private static Map<GameObject, EmbeddedContainer> embeddedContainers = Collections.emptyMap();
+
+  /**
+   * Current location of creatures decoded from cryopods, taken from whoever holds the cryopod
+   */
+  private static Map<GameObject, LocationData> cryopodLocations = Collections.emptyMap();
+
   private static OptionSet options;
 
   private static Consumer<JsonGenerator> writerFunction;
@@ -71,6 +101,77 @@ public class CreatureListCommands {
     return object.getClassString().contains("_Character_") || object.getClassString().startsWith("DinoCharacterStatusComponent_") || object.getClassString().equals("Raft_BP_C");
   }
 
+  protected static boolean isCryopod(GameObject object) {
+    String className = object.getClassString().toLowerCase(Locale.ROOT);
+    return object.isItem() && (className.contains("cryopod") || className.contains("soultrap"));
+  }
+
+  /**
+   * Cryopods and soul traps store their creature as serialized container in CustomItemDatas.
+   *
+   * @return container of the stored creature or null if {@code item} is empty
+   */
+  protected static EmbeddedContainer readCryopod(GameObject item) {
+    ArkArrayStruct customItemDatas = item.getPropertyValue("CustomItemDatas", ArkArrayStruct.class);
+    if (customItemDatas == null) {
+      return null;
+    }
+
+    for (Struct customItemData : customItemDatas) {
+      StructPropertyList customDataBytes = ((PropertyContainer) customItemData).getPropertyValue("CustomDataBytes", StructPropertyList.class);
+      ArkArrayStruct byteArrays = customDataBytes != null ? customDataBytes.getPropertyValue("ByteArrays", ArkArrayStruct.class) : null;
+      if (byteArrays == null || byteArrays.isEmpty()) {
+        continue;
+      }
+
+      ArkArrayUInt8 bytes = ((PropertyContainer) byteArrays.get(0)).getPropertyValue("Bytes", ArkArrayUInt8.class);
+      if (bytes != null && !bytes.isEmpty()) {
+        return new EmbeddedContainer(bytes);
+      }
+    }
+
+    return null;
+  }
+
+  /**
+   * Resolves the actors holding {@code items} in their inventory, like players, structures or creatures.
+   * Inventory components are named after their owner, the owner is the rest of their name chain.
+   *
+   * @return map from item to the actor holding it, items lying around have no entry
+   */
+  private static Map<GameObject, GameObject> holdersOf(List<GameObject> items) {
+    Map<GameObject, List<ArkName>> ownerNames = new IdentityHashMap<>();
+    for (GameObject item : items) {
+      GameObject inventory = item.findPropertyValue("OwnerInventory", ObjectReference.class).map(saveFile::getObject).orElse(null);
+      if (inventory != null && inventory.getNames().size() > 1) {
+        ownerNames.put(item, inventory.getNames().subList(1, inventory.getNames().size()));
+      }
+    }
+
+    if (ownerNames.isEmpty()) {
+      return Collections.emptyMap();
+    }
+
+    Set<List<ArkName>> wanted = new HashSet<>(ownerNames.values());
+    Map<List<ArkName>, GameObject> owners = saveFile.getObjects().parallelStream()
+        .filter(object -> !object.isItem() && wanted.contains(object.getNames()))
+        .collect(Collectors.toMap(GameObject::getNames, Function.identity(), (a, b) -> a));
+
+    Map<GameObject, GameObject> holders = new IdentityHashMap<>();
+    ownerNames.forEach((item, names) -> {
+      GameObject owner = owners.get(names);
+      if (owner != null) {
+        holders.put(item, owner);
+      }
+    });
+    return holders;
+  }
+
+  protected static GameObjectContainer containerOf(GameObject creature) {
+    GameObjectContainer container = embeddedContainers.get(creature);
+    return container != null ? container : saveFile;
+  }
+
   protected static boolean onlyTameable(GameObject object) {
     return (!object.hasAnyProperty("bForceDisablingTaming") || !object.getPropertyValue("bForceDisablingTaming", Boolean.class)) || object.getClassString().equals("Raft_BP_C");
   }
@@ -86,6 +187,9 @@ public class CreatureListCommands {
       withoutIndexSpec = optionHandler.accepts("without-index", "Omits reading and writing classes.json");
       cleanFolderSpec = optionHandler.accepts("clean", "Deletes all .json files in the target directory.");
       writeAllFieldsSpec = optionHandler.accepts("write-all-fields", "Writes all the fields.");
+      includeCryopodsSpec = optionHandler.accepts("include-cryopods", "Include creatures stored in cryopods and soul traps.");
+      watchSpec = optionHandler.accepts("watch", "Keep running and write the lists again whenever SAVE changes.");
+      outputFormatSpec = OutputSink.accepts(optionHandler);
 
       options = optionHandler.reparse();
 
@@ -101,24 +205,81 @@ public class CreatureListCommands {
       }
 
       String savePath = params.get(0);
-      outputDirectory = Paths.get(params.get(1));
 
-      ReadingOptions readingOptions = optionHandler.readingOptions().withObjectFilter(CreatureListCommands::neededClasses);
+      boolean includeCryopods = options.has(includeCryopodsSpec);
+      ReadingOptions readingOptions = optionHandler.readingOptions().withObjectFilter(object -> neededClasses(object) || includeCryopods && isCryopod(object));
+
+      Path saveGame = Paths.get(savePath).toAbsolutePath();
+      SaveWatcher watcher = options.has(watchSpec) ? new SaveWatcher(saveGame.getParent(), path -> path.equals(saveGame)) : null;
+
+      do {
+        Stopwatch stopwatch = new Stopwatch(optionHandler.useStopwatch());
+        saveFile = new ArkSavegame(savePath, readingOptions);
+        stopwatch.stop("Reading");
+
+        if (includeCryopods) {
+          List<GameObject> cryopods = saveFile.getObjects().parallelStream().filter(CreatureListCommands::isCryopod).collect(Collectors.toList());
+          Map<GameObject, EmbeddedContainer> containers = new IdentityHashMap<>();
+          Map<GameObject, LocationData> locations = new IdentityHashMap<>();
+          Map<GameObject, GameObject> holders = holdersOf(cryopods);
+
+          EmbeddedContainer[] decoded = new EmbeddedContainer[cryopods.size()];
+          IntStream.range(0, decoded.length).parallel().forEach(index -> {
+            GameObject item = cryopods.get(index);
+            try {
+              decoded[index] = readCryopod(item);
+            } catch (RuntimeException ex) {
+              System.err.println("Found potentially corrupt cryopod: " + item.getNames().get(0));
+              if (optionHandler.isVerbose()) {
+                ex.printStackTrace();
+              }
+            }
+          });
+
+          for (int index = 0; index < decoded.length; index++) {
+            GameObject item = cryopods.get(index);
+            EmbeddedContainer container = decoded[index];
+            if (container != null) {
+              // The stored creature keeps the transform it had when it got frozen
+              GameObject holder = holders.get(item);
+              GameObject creature = container.getLoaded(0);
+              containers.put(creature, container);
+              locations.put(creature, holder != null ? holder.getLocation() : item.getLocation());
+            }
+          }
 
-      Stopwatch stopwatch = new Stopwatch(optionHandler.useStopwatch());
-      saveFile = new ArkSavegame(savePath, readingOptions);
-      stopwatch.stop("Reading");
-      writeAnimalLists(filter);
-      stopwatch.stop("Dumping");
+          embeddedContainers = containers;
+          cryopodLocations = locations;
+          stopwatch.stop("Decoding cryopods");
+        }
+        // A new sink for every save, zip files get replaced as a whole
+        try (OutputSink outputSink = OutputSink.open(options.valueOf(outputFormatSpec), params.get(1), optionHandler)) {
+          sink = outputSink;
+          writeAnimalLists(filter);
+          outputSink.commit();
+        }
+        stopwatch.stop("Dumping");
 
-      stopwatch.print();
+        stopwatch.print();
+      } while (watcher != null && awaitSave(watcher, saveGame));
     } catch (IOException ex) {
       throw new RuntimeException(ex);
     }
   }
 
+  /**
+   * Waits until the server finished writing a new version of {@code saveGame}.
+   */
+  private static boolean awaitSave(SaveWatcher watcher, Path saveGame) throws IOException {
+    do {
+      watcher.awaitChanges();
+    } while (!Files.exists(saveGame));
+    return true;
+  }
+
   public static void writeAnimalLists(BiPredicate<GameObject, ArkSavegame> filter) {
-    Stream<GameObject> objectStream = saveFile.getObjects().parallelStream().filter(CreatureListCommands::onlyCreatures);
+    Stream<GameObject> objectStream = Stream.concat(saveFile.getObjects().parallelStream(), embeddedContainers.keySet().parallelStream())
+        .filter(CreatureListCommands::onlyCreatures);
 
     if (filter != null) {
       objectStream = objectStream.filter(object -> filter.test(object, saveFile));
@@ -128,8 +289,8 @@ public class CreatureListCommands {
       objectStream = objectStream.filter(CreatureListCommands::onlyTameable);
     }
 
-    if (options.has(cleanFolderSpec)) {
-      try (DirectoryStream<Path> directoryStream = Files.newDirectoryStream(outputDirectory, "*.json")) {
+    if (options.has(cleanFolderSpec) && sink.getDirectory() != null) {
+      try (DirectoryStream<Path> directoryStream = Files.newDirectoryStream(sink.getDirectory(), "*.json")) {
         for (Path path : directoryStream) {
           Files.delete(path);
         }
@@ -161,9 +322,12 @@ public class CreatureListCommands {
   }
 
   public static Map<String, String> readClassNames() {
-    Path classFile = outputDirectory.resolve("classes.json");
     Map<String, String> classNames = new HashMap<>();
+    if (sink.getDirectory() == null) {
+      return classNames;
+    }
 
+    Path classFile = sink.getDirectory().resolve("classes.json");
     if (Files.exists(classFile)) {
       try (InputStream classStream = Files.newInputStream(classFile)) {
         JsonReader classReader = Json.createReader(classStream);
@@ -184,36 +348,32 @@ public class CreatureListCommands {
   }
 
   public static void writeClassNames(Map<String, String> classNames) {
-    Path classFile = outputDirectory.resolve("classes.json");
-
-    try (OutputStream clsStream = Files.newOutputStream(classFile)) {
-      CommonFunctions.writeJson(clsStream, g -> {
+    try {
+      sink.write("classes.json", g -> {
         g.writeStartArray();
 
         classNames.forEach((cls, name) -> g.writeStartObject().write("cls", cls).write("name", name).writeEnd());
 
         g.writeEnd();
-      }, optionHandler);
+      });
     } catch (IOException e) {
       e.printStackTrace();
     }
   }
 
   public static void writeList(Map.Entry<String, List<GameObject>> entry) {
-    Path outputFile = outputDirectory.resolve(entry.getKey() + ".json");
-
     List<? extends GameObject> filteredClasses = entry.getValue();
     LatLonCalculator latLongCalculator = LatLonCalculator.forSave(saveFile);
 
-    try (OutputStream out = Files.newOutputStream(outputFile)) {
-      CommonFunctions.writeJson(out, generator -> {
+    try {
+      sink.write(entry.getKey() + ".json", generator -> {
         if (options.has(statisticsSpec)) {
           generator.writeStartObject();
 
           generator.write("count", filteredClasses.size());
 
           IntSummaryStatistics statistics =
-              filteredClasses.stream().filter(a -> CommonFunctions.onlyWild(a, saveFile)).mapToInt(a -> CommonFunctions.getBaseLevel(a, saveFile)).summaryStatistics();
+              filteredClasses.stream().filter(a -> CommonFunctions.onlyWild(a, saveFile)).mapToInt(a -> CommonFunctions.getBaseLevel(a, containerOf(a))).summaryStatistics();
           if (statistics.getCount() > 0) {
             generator.write("wildMin", statistics.getMin());
             generator.write("wildMax", statistics.getMax());
@@ -221,7 +381,7 @@ public class CreatureListCommands {
           }
 
           IntSummaryStatistics tamedBaseStatistics =
-              filteredClasses.stream().filter(a -> CommonFunctions.onlyTamed(a, saveFile)).mapToInt(a -> CommonFunctions.getBaseLevel(a, saveFile)).summaryStatistics();
+              filteredClasses.stream().filter(a -> CommonFunctions.onlyTamed(a, saveFile)).mapToInt(a -> CommonFunctions.getBaseLevel(a, containerOf(a))).summaryStatistics();
           if (tamedBaseStatistics.getCount() > 0) {
             generator.write("tamedBaseMin", tamedBaseStatistics.getMin());
             generator.write("tamedBaseMax", tamedBaseStatistics.getMax());
@@ -229,7 +389,7 @@ public class CreatureListCommands {
           }
 
           IntSummaryStatistics tamedFullStatistics =
-              filteredClasses.stream().filter(a -> CommonFunctions.onlyTamed(a, saveFile)).mapToInt(a -> CommonFunctions.getFullLevel(a, saveFile)).summaryStatistics();
+              filteredClasses.stream().filter(a -> CommonFunctions.onlyTamed(a, saveFile)).mapToInt(a -> CommonFunctions.getFullLevel(a, containerOf(a))).summaryStatistics();
           if (tamedFullStatistics.getCount() > 0) {
             generator.write("tamedFullMin", tamedFullStatistics.getMin());
             generator.write("tamedFullMax", tamedFullStatistics.getMax());
@@ -242,7 +402,11 @@ public class CreatureListCommands {
         }
 
         for (GameObject creature : filteredClasses) {
-          SharedWriters.writeCreatureInfo(generator, creature, latLongCalculator, saveFile, options.has(writeAllFieldsSpec));
+          if (cryopodLocations.containsKey(creature)) {
+            SharedWriters.writeCreatureInfo(generator, creature, cryopodLocations.get(creature), true, latLongCalculator, containerOf(creature), options.has(writeAllFieldsSpec), null);
+          } else {
+            SharedWriters.writeCreatureInfo(generator, creature, latLongCalculator, containerOf(creature), options.has(writeAllFieldsSpec));
+          }
         }
 
         generator.writeEnd(); // Array
@@ -250,17 +414,15 @@ public class CreatureListCommands {
         if (options.has(statisticsSpec)) {
           generator.writeEnd(); // Object
         }
-      }, optionHandler);
+      });
     } catch (Exception e) {
       e.printStackTrace();
     }
   }
 
   public static void writeEmpty(String s) {
-    Path outputFile = outputDirectory.resolve(s + ".json");
-
-    try (OutputStream out = Files.newOutputStream(outputFile)) {
-      CommonFunctions.writeJson(out, writerFunction, optionHandler);
+    try {
+      sink.write(s + ".json", writerFunction);
     } catch (IOException e) {
       e.printStackTrace();
     }
@@ -0,0 +1,148 @@
+package qowyn.ark.tools;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import qowyn.ark.ArkSavegame;
+import qowyn.ark.GameObject;
+import qowyn.ark.types.LocationData;
+
+/**
+ * Compact column based projection of all tamed creatures of a savegame.
+ *
+ * Only primitive columns are kept, the savegame itself can be discarded once the snapshot exists.
+ */
+public class CreatureSnapshot {
+
+  private final int size;
+
+  private final long[] ids;
+
+  private final int[] classes;
+
+  private final String[] classNames;
+
+  private final int[] teams;
+
+  private final int[] levels;
+
+  private final float[] locations;
+
+  private final String[] names;
+
+  private final String[] objectNames;
+
+  private final LongIntHashMap rowIndex;
+
+  private final Map<String, Integer> objectNameIndex = new HashMap<>();
+
+  public CreatureSnapshot(ArkSavegame savegame) {
+    List<GameObject> tamed = savegame.getObjects().parallelStream()
+        .filter(CreatureListCommands::onlyCreatures)
+        .filter(o -> CommonFunctions.onlyTamed(o, savegame))
+        .collect(Collectors.toList());
+
+    size = tamed.size();
+    ids = new long[size];
+    classes = new int[size];
+    teams = new int[size];
+    levels = new int[size];
+    locations = new float[size * 3];
+    names = new String[size];
+    objectNames = new String[size];
+    rowIndex = new LongIntHashMap(Math.max(16, size * 2), -1);
+
+    Map<String, Integer> classMap = new HashMap<>();
+
+    for (int row = 0; row < size; row++) {
+      GameObject creature = tamed.get(row);
+
+      ids[row] = CommonFunctions.getDinoId(creature);
+      classes[row] = classMap.computeIfAbsent(creature.getClassString(), key -> classMap.size());
+      teams[row] = creature.findPropertyValue("TargetingTeam", Integer.class).orElse(0);
+      levels[row] = CommonFunctions.getFullLevel(creature, savegame);
+      names[row] = creature.getPropertyValue("TamedName", String.class);
+
+      LocationData location = creature.getLocation();
+      if (location != null) {
+        locations[row * 3] = location.getX();
+        locations[row * 3 + 1] = location.getY();
+        locations[row * 3 + 2] = location.getZ();
+      }
+
+      if (ids[row] == 0) {
+        // No DinoID, only the object name can tell these apart
+        objectNames[row] = creature.getNames().toString();
+        objectNameIndex.putIfAbsent(objectNames[row], row);
+      } else {
+        // Same DinoID twice is a dupe, first one wins
+        rowIndex.putIfAbsent(ids[row], row);
+      }
+    }
+
+    classNames = new String[classMap.size()];
+    classMap.forEach((className, index) -> classNames[index] = className);
+  }
+
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Looks up the creature in {@code row} of {@code other}, by DinoID or by object name if it has no DinoID.
+   *
+   * @return row of the same creature in this snapshot or -1 if not part of this snapshot
+   */
+  public int indexOf(CreatureSnapshot other, int row) {
+    if (other.ids[row] == 0) {
+      return objectNameIndex.getOrDefault(other.objectNames[row], -1);
+    }
+
+    return rowIndex.get(other.ids[row]);
+  }
+
+  public long getId(int row) {
+    return ids[row];
+  }
+
+  public String getClassName(int row) {
+    return classNames[classes[row]];
+  }
+
+  public int getTeam(int row) {
+    return teams[row];
+  }
+
+  public int getLevel(int row) {
+    return levels[row];
+  }
+
+  public String getName(int row) {
+    return names[row];
+  }
+
+  public float getX(int row) {
+    return locations[row * 3];
+  }
+
+  public float getY(int row) {
+    return locations[row * 3 + 1];
+  }
+
+  public float getZ(int row) {
+    return locations[row * 3 + 2];
+  }
+
+  /**
+   * @return squared distance between {@code row} of this snapshot and {@code otherRow} of {@code other}
+   */
+  public float distanceSquared(int row, CreatureSnapshot other, int otherRow) {
+    float dx = getX(row) - other.getX(otherRow);
+    float dy = getY(row) - other.getY(otherRow);
+    float dz = getZ(row) - other.getZ(otherRow);
+    return dx * dx + dy * dy + dz * dz;
+  }
+
+}
@@ -0,0 +1,368 @@
+package qowyn.ark.tools;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+import java.util.stream.IntStream;
+
+import javax.json.stream.JsonGenerator;
+
+import joptsimple.OptionSet;
+import joptsimple.OptionSpec;
+import qowyn.ark.ArkSavegame;
+import qowyn.ark.GameObject;
+import qowyn.ark.ReadingOptions;
+import qowyn.ark.types.ArkName;
+
+public class DiffCommands {
+
+  public static void diffCreatures(OptionHandler oh) {
+    OptionSpec<Float> minDistanceSpec = oh.accepts("min-distance", "Only report creatures as moved if they moved farther than <distance> units.").withRequiredArg().ofType(Float.class).defaultsTo(1000.0f).describedAs("distance");
+    OptionSpec<Integer> teamSpec = oh.accepts("team", "Only report creatures which belong or belonged to the given tribe/team.").withRequiredArg().ofType(Integer.class).describedAs("team");
+
+    OptionSet options = oh.reparse();
+
+    List<String> params = oh.getParams(options);
+    if (params.size() < 2 || params.size() > 3 || oh.wantsHelp()) {
+      oh.printCommandHelp();
+      System.exit(1);
+      return;
+    }
+
+    DataManager.loadData(oh.lang());
+
+    try {
+      Stopwatch stopwatch = new Stopwatch(oh.useStopwatch());
+
+      ReadingOptions readingOptions = oh.readingOptions().withObjectFilter(CreatureListCommands::neededClasses);
+
+      // Only the snapshots are kept, each savegame can be collected as soon as it has been projected
+      CompletableFuture<CreatureSnapshot> oldFuture = CompletableFuture.supplyAsync(() -> loadSnapshot(params.get(0), readingOptions));
+      CompletableFuture<CreatureSnapshot> newFuture = CompletableFuture.supplyAsync(() -> loadSnapshot(params.get(1), readingOptions));
+
+      CreatureSnapshot oldSnapshot = oldFuture.join();
+      CreatureSnapshot newSnapshot = newFuture.join();
+
+      stopwatch.stop("Loading");
+
+      float minDistanceSquared = options.valueOf(minDistanceSpec) * options.valueOf(minDistanceSpec);
+      boolean filterTeam = options.has(teamSpec);
+      int team = filterTeam ? options.valueOf(teamSpec) : 0;
+
+      // Join result per row of the new snapshot, -1 if added
+      int[] matches = new int[newSnapshot.size()];
+      for (int row = 0; row < newSnapshot.size(); row++) {
+        matches[row] = oldSnapshot.indexOf(newSnapshot, row);
+      }
+
+      stopwatch.stop("Joining");
+
+      Consumer<JsonGenerator> writer = g -> {
+        g.writeStartObject();
+
+        g.write("oldCreatures", oldSnapshot.size());
+        g.write("newCreatures", newSnapshot.size());
+
+        g.writeStartArray("removed");
+        for (int row = 0; row < oldSnapshot.size(); row++) {
+          if (newSnapshot.indexOf(oldSnapshot, row) == -1 && (!filterTeam || oldSnapshot.getTeam(row) == team)) {
+            g.writeStartObject();
+            writeCreature(g, oldSnapshot, row);
+            g.writeEnd();
+          }
+        }
+        g.writeEnd();
+
+        g.writeStartArray("added");
+        for (int row = 0; row < newSnapshot.size(); row++) {
+          if (matches[row] == -1 && (!filterTeam || newSnapshot.getTeam(row) == team)) {
+            g.writeStartObject();
+            writeCreature(g, newSnapshot, row);
+            g.writeEnd();
+          }
+        }
+        g.writeEnd();
+
+        g.writeStartArray("levelChanged");
+        for (int row = 0; row < newSnapshot.size(); row++) {
+          int oldRow = matches[row];
+          if (oldRow != -1 && oldSnapshot.getLevel(oldRow) != newSnapshot.getLevel(row) && matchesTeam(oldSnapshot, oldRow, newSnapshot, row, filterTeam, team)) {
+            g.writeStartObject();
+            writeCreature(g, newSnapshot, row);
+            g.write("oldLevel", oldSnapshot.getLevel(oldRow));
+            g.writeEnd();
+          }
+        }
+        g.writeEnd();
+
+        g.writeStartArray("ownerChanged");
+        for (int row = 0; row < newSnapshot.size(); row++) {
+          int oldRow = matches[row];
+          if (oldRow != -1 && oldSnapshot.getTeam(oldRow) != newSnapshot.getTeam(row) && matchesTeam(oldSnapshot, oldRow, newSnapshot, row, filterTeam, team)) {
+            g.writeStartObject();
+            writeCreature(g, newSnapshot, row);
+            g.write("oldTeam", oldSnapshot.getTeam(oldRow));
+            g.writeEnd();
+          }
+        }
+        g.writeEnd();
+
+        g.writeStartArray("moved");
+        for (int row = 0; row < newSnapshot.size(); row++) {
+          int oldRow = matches[row];
+          if (oldRow != -1 && newSnapshot.distanceSquared(row, oldSnapshot, oldRow) > minDistanceSquared && matchesTeam(oldSnapshot, oldRow, newSnapshot, row, filterTeam, team)) {
+            g.writeStartObject();
+            writeCreature(g, newSnapshot, row);
+            g.write("oldX", oldSnapshot.getX(oldRow));
+            g.write("oldY", oldSnapshot.getY(oldRow));
+            g.write("oldZ", oldSnapshot.getZ(oldRow));
+            g.write("distance", Math.sqrt(newSnapshot.distanceSquared(row, oldSnapshot, oldRow)));
+            g.writeEnd();
+          }
+        }
+        g.writeEnd();
+
+        g.writeEnd();
+      };
+
+      if (params.size() > 2) {
+        CommonFunctions.writeJson(params.get(2), writer, oh);
+      } else {
+        CommonFunctions.writeJson(System.out, writer, oh);
+      }
+
+      stopwatch.stop("Writing");
+      stopwatch.print();
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  public static void diff(OptionHandler oh) {
+    OptionSpec<Void> summaryOnlySpec = oh.accepts("summary-only", "Only write the per class summary.");
+
+    OptionSet options = oh.reparse();
+
+    List<String> params = oh.getParams(options);
+    if (params.size() < 2 || params.size() > 3 || oh.wantsHelp()) {
+      oh.printCommandHelp();
+      System.exit(1);
+      return;
+    }
+
+    try {
+      Stopwatch stopwatch = new Stopwatch(oh.useStopwatch());
+
+      // Only one savegame is held at a time, the old one is reduced to hashes before loading the new one
+      ObjectDigest oldDigest = new ObjectDigest(new ArkSavegame(params.get(0), oh.readingOptions()));
+
+      stopwatch.stop("Loading and hashing old save");
+
+      ObjectDigest newDigest = new ObjectDigest(new ArkSavegame(params.get(1), oh.readingOptions()));
+
+      stopwatch.stop("Loading and hashing new save");
+
+      int[] matches = new int[newDigest.size()];
+      boolean[] oldMatched = new boolean[oldDigest.size()];
+      for (int row = 0; row < newDigest.size(); row++) {
+        matches[row] = oldDigest.indexOf(newDigest.getNames(row));
+        if (matches[row] != -1) {
+          oldMatched[matches[row]] = true;
+        }
+      }
+
+      // className -> [changed, added, removed, unchanged]
+      Map<String, int[]> summary = new TreeMap<>();
+      for (int row = 0; row < newDigest.size(); row++) {
+        int[] counts = summary.computeIfAbsent(newDigest.getClassName(row), key -> new int[4]);
+        if (matches[row] == -1) {
+          counts[1]++;
+        } else if (oldDigest.getHash(matches[row]) != newDigest.getHash(row)) {
+          counts[0]++;
+        } else {
+          counts[3]++;
+        }
+      }
+
+      for (int row = 0; row < oldDigest.size(); row++) {
+        if (!oldMatched[row]) {
+          summary.computeIfAbsent(oldDigest.getClassName(row), key -> new int[4])[2]++;
+        }
+      }
+
+      stopwatch.stop("Comparing");
+
+      Consumer<JsonGenerator> writer = g -> {
+        g.writeStartObject();
+
+        g.write("oldObjects", oldDigest.size());
+        g.write("newObjects", newDigest.size());
+
+        g.writeStartObject("summary");
+        summary.forEach((className, counts) -> {
+          if (counts[0] + counts[1] + counts[2] == 0) {
+            return;
+          }
+
+          g.writeStartObject(className);
+          g.write("changed", counts[0]);
+          g.write("added", counts[1]);
+          g.write("removed", counts[2]);
+          g.write("unchanged", counts[3]);
+          g.writeEnd();
+        });
+        g.writeEnd();
+
+        if (!options.has(summaryOnlySpec)) {
+          g.writeStartArray("changed");
+          for (int row = 0; row < newDigest.size(); row++) {
+            int oldRow = matches[row];
+            if (oldRow != -1 && oldDigest.getHash(oldRow) != newDigest.getHash(row)) {
+              g.writeStartObject();
+              writeDigest(g, newDigest, row);
+              g.write("oldIndex", oldRow);
+              if (!oldDigest.getClassName(oldRow).equals(newDigest.getClassName(row))) {
+                g.write("oldClass", oldDigest.getClassName(oldRow));
+              }
+              g.writeEnd();
+            }
+          }
+          g.writeEnd();
+
+          g.writeStartArray("added");
+          for (int row = 0; row < newDigest.size(); row++) {
+            if (matches[row] == -1) {
+              g.writeStartObject();
+              writeDigest(g, newDigest, row);
+              g.writeEnd();
+            }
+          }
+          g.writeEnd();
+
+          g.writeStartArray("removed");
+          for (int row = 0; row < oldDigest.size(); row++) {
+            if (!oldMatched[row]) {
+              g.writeStartObject();
+              writeDigest(g, oldDigest, row);
+              g.writeEnd();
+            }
+          }
+          g.writeEnd();
+        }
+
+        g.writeEnd();
+      };
+
+      if (params.size() > 2) {
+        CommonFunctions.writeJson(params.get(2), writer, oh);
+      } else {
+        CommonFunctions.writeJson(System.out, writer, oh);
+      }
+
+      stopwatch.stop("Writing");
+      stopwatch.print();
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  private static void writeDigest(JsonGenerator generator, ObjectDigest digest, int row) {
+    generator.write("index", row);
+    generator.write("class", digest.getClassName(row));
+    generator.writeStartArray("names");
+    for (ArkName name : digest.getNames(row)) {
+      generator.write(name.toString());
+    }
+    generator.writeEnd();
+  }
+
+  private static CreatureSnapshot loadSnapshot(String savePath, ReadingOptions readingOptions) {
+    try {
+      return new CreatureSnapshot(new ArkSavegame(savePath, readingOptions));
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  private static boolean matchesTeam(CreatureSnapshot oldSnapshot, int oldRow, CreatureSnapshot newSnapshot, int newRow, boolean filterTeam, int team) {
+    return !filterTeam || oldSnapshot.getTeam(oldRow) == team || newSnapshot.getTeam(newRow) == team;
+  }
+
+  private static void writeCreature(JsonGenerator generator, CreatureSnapshot snapshot, int row) {
+    generator.write("id", snapshot.getId(row));
+
+    String className = snapshot.getClassName(row);
+    generator.write("type", DataManager.hasCreature(className) ? DataManager.getCreature(className).getName() : className);
+
+    String name = snapshot.getName(row);
+    if (name != null) {
+      generator.write("name", name);
+    }
+
+    generator.write("team", snapshot.getTeam(row));
+    generator.write("level", snapshot.getLevel(row));
+    generator.write("x", snapshot.getX(row));
+    generator.write("y", snapshot.getY(row));
+    generator.write("z", snapshot.getZ(row));
+  }
+
+  /**
+   * Names, class and content hash of every object of a savegame, indexed by object id.
+   */
+  private static class ObjectDigest {
+
+    private final List<List<ArkName>> names;
+
+    private final String[] classNames;
+
+    private final long[] hashes;
+
+    private final Map<List<ArkName>, Integer> nameIndex;
+
+    public ObjectDigest(ArkSavegame savegame) {
+      List<GameObject> objects = savegame.getObjects();
+
+      names = new ArrayList<>(objects.size());
+      classNames = new String[objects.size()];
+      hashes = new long[objects.size()];
+      nameIndex = new HashMap<>(objects.size() * 2);
+
+      IntStream.range(0, objects.size()).parallel().forEach(index -> hashes[index] = ObjectHasher.hash(objects.get(index), savegame));
+
+      for (int index = 0; index < objects.size(); index++) {
+        GameObject object = objects.get(index);
+        names.add(object.getNames());
+        classNames[index] = object.getClassString();
+        // Objects with the same names are dropped by the game on load, first one wins
+        nameIndex.putIfAbsent(object.getNames(), index);
+      }
+    }
+
+    public int size() {
+      return hashes.length;
+    }
+
+    public int indexOf(List<ArkName> objectNames) {
+      return nameIndex.getOrDefault(objectNames, -1);
+    }
+
+    public List<ArkName> getNames(int row) {
+      return names.get(row);
+    }
+
+    public String getClassName(int row) {
+      return classNames[row];
+    }
+
+    public long getHash(int row) {
+      return hashes[row];
+    }
+
+  }
+
+}
@@ -0,0 +1,42 @@
+package qowyn.ark.tools;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.function.Consumer;
+
+import javax.json.stream.JsonGenerator;
+
+/**
+ * Writes every document to its own file, files with unchanged content are left alone.
+ */
+public class DirectorySink implements OutputSink {
+
+  private final Path directory;
+
+  private final OptionHandler oh;
+
+  public DirectorySink(Path directory, OptionHandler oh) {
+    this.directory = directory;
+    this.oh = oh;
+  }
+
+  @Override
+  public void write(String name, Consumer<JsonGenerator> writeJson) throws IOException {
+    CommonFunctions.writeJsonIfChanged(directory.resolve(name), writeJson, oh);
+  }
+
+  @Override
+  public void delete(String name) throws IOException {
+    Files.deleteIfExists(directory.resolve(name));
+  }
+
+  @Override
+  public Path getDirectory() {
+    return directory;
+  }
+
+  @Override
+  public void close() {}
+
+}
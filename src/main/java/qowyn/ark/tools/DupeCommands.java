@@ -0,0 +1,228 @@
+package qowyn.ark.tools;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import javax.json.stream.JsonGenerator;
+
+import joptsimple.OptionSet;
+import joptsimple.OptionSpec;
+import qowyn.ark.ArkSavegame;
+import qowyn.ark.GameObject;
+import qowyn.ark.structs.StructPropertyList;
+import qowyn.ark.types.ArkName;
+import qowyn.ark.types.LocationData;
+import qowyn.ark.types.ObjectReference;
+
+public class DupeCommands {
+
+  public static void dupes(OptionHandler oh) {
+    OptionSpec<Void> withSaveDupesSpec = oh.accepts("with-save-dupes", "Also report objects sharing the same names, these are usually artifacts of the save process.");
+    OptionSpec<Void> withoutItemsSpec = oh.accepts("without-items", "Don't check ItemIDs.");
+    OptionSpec<Void> withoutCreaturesSpec = oh.accepts("without-creatures", "Don't check DinoIDs.");
+
+    OptionSet options = oh.reparse();
+
+    List<String> params = oh.getParams(options);
+    if (params.size() < 1 || params.size() > 2 || oh.wantsHelp()) {
+      oh.printCommandHelp();
+      System.exit(1);
+      return;
+    }
+
+    DataManager.loadData(oh.lang());
+
+    try {
+      String savePath = params.get(0);
+
+      Stopwatch stopwatch = new Stopwatch(oh.useStopwatch());
+
+      ArkSavegame savegame = new ArkSavegame(savePath, oh.readingOptions());
+      LatLonCalculator latLonCalculator = LatLonCalculator.forSave(savegame);
+
+      stopwatch.stop("Loading");
+
+      List<GameObject> objects = savegame.getObjects();
+      int objectCount = objects.size();
+
+      // Index of object == position in array, 0 means no id
+      long[] dinoIds = new long[objectCount];
+      long[] itemIds = new long[objectCount];
+
+      IntStream.range(0, objectCount).parallel().forEach(index -> {
+        GameObject object = objects.get(index);
+        if (object.isItem()) {
+          if (!options.has(withoutItemsSpec)) {
+            itemIds[index] = getItemId(object);
+          }
+        } else if (!options.has(withoutCreaturesSpec)) {
+          dinoIds[index] = CommonFunctions.getDinoId(object);
+        }
+      });
+
+      stopwatch.stop("Collecting ids");
+
+      List<int[]> dinoCollisions = findCollisions(dinoIds, objects, options.has(withSaveDupesSpec));
+      List<int[]> itemCollisions = findCollisions(itemIds, objects, options.has(withSaveDupesSpec));
+
+      stopwatch.stop("Counting");
+
+      // Items don't have a location or team, use the owner of their inventory instead
+      Set<Integer> inventories = new HashSet<>();
+      for (int[] collision : itemCollisions) {
+        for (int index : collision) {
+          objects.get(index).findPropertyValue("OwnerInventory", ObjectReference.class).ifPresent(reference -> inventories.add(reference.getObjectId()));
+        }
+      }
+
+      Map<Integer, GameObject> inventoryOwners = inventories.isEmpty() ? Collections.emptyMap() : objects.parallelStream()
+          .filter(object -> object.findPropertyValue("MyInventoryComponent", ObjectReference.class).map(reference -> inventories.contains(reference.getObjectId())).orElse(false))
+          .collect(Collectors.toMap(object -> object.getPropertyValue("MyInventoryComponent", ObjectReference.class).getObjectId(), object -> object, (a, b) -> a));
+
+      stopwatch.stop("Resolving owners");
+
+      Consumer<JsonGenerator> writer = g -> {
+        g.writeStartObject();
+
+        g.write("objects", objectCount);
+
+        g.writeStartArray("creatures");
+        for (int[] collision : dinoCollisions) {
+          g.writeStartObject();
+          g.write("id", dinoIds[collision[0]]);
+          g.write("count", collision.length);
+          g.writeStartArray("objects");
+          for (int index : collision) {
+            writeObject(g, objects.get(index), objects.get(index), latLonCalculator);
+          }
+          g.writeEnd();
+          g.writeEnd();
+        }
+        g.writeEnd();
+
+        g.writeStartArray("items");
+        for (int[] collision : itemCollisions) {
+          g.writeStartObject();
+          g.write("id", itemIds[collision[0]]);
+          g.write("count", collision.length);
+          g.writeStartArray("objects");
+          for (int index : collision) {
+            GameObject item = objects.get(index);
+            GameObject owner = item.findPropertyValue("OwnerInventory", ObjectReference.class).map(reference -> inventoryOwners.get(reference.getObjectId())).orElse(null);
+            writeObject(g, item, owner, latLonCalculator);
+          }
+          g.writeEnd();
+          g.writeEnd();
+        }
+        g.writeEnd();
+
+        g.writeEnd();
+      };
+
+      if (params.size() > 1) {
+        CommonFunctions.writeJson(params.get(1), writer, oh);
+      } else {
+        CommonFunctions.writeJson(System.out, writer, oh);
+      }
+
+      stopwatch.stop("Writing");
+      stopwatch.print();
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  /**
+   * Combines ItemID1 and ItemID2 of the ItemId struct, 0 if the object has no ItemId.
+   */
+  public static long getItemId(GameObject item) {
+    StructPropertyList itemID = item.getPropertyValue("ItemId", StructPropertyList.class);
+    if (itemID == null) {
+      return 0;
+    }
+
+    int itemID1 = itemID.findPropertyValue("ItemID1", Integer.class).orElse(0);
+    int itemID2 = itemID.findPropertyValue("ItemID2", Integer.class).orElse(0);
+    return (long) itemID1 << Integer.SIZE | (itemID2 & 0xFFFFFFFFL);
+  }
+
+  /**
+   * @return indices of all objects sharing an id, grouped by id
+   */
+  private static List<int[]> findCollisions(long[] ids, List<GameObject> objects, boolean withSaveDupes) {
+    LongIntHashMap counts = new LongIntHashMap(Math.max(16, ids.length / 4), 0);
+    for (long id : ids) {
+      if (id != 0) {
+        counts.addTo(id, 1);
+      }
+    }
+
+    // Second pass only looks at the (usually very few) ids which occur more than once
+    Map<Long, List<Integer>> groups = new HashMap<>();
+    for (int index = 0; index < ids.length; index++) {
+      if (ids[index] != 0 && counts.get(ids[index]) > 1) {
+        groups.computeIfAbsent(ids[index], key -> new ArrayList<>()).add(index);
+      }
+    }
+
+    List<int[]> collisions = new ArrayList<>();
+    for (List<Integer> group : groups.values()) {
+      if (!withSaveDupes) {
+        // The game drops objects with the same names on load, those are no real dupes
+        Set<List<ArkName>> names = new HashSet<>();
+        group.removeIf(index -> !names.add(objects.get(index).getNames()));
+      }
+
+      if (group.size() > 1) {
+        collisions.add(group.stream().mapToInt(Integer::intValue).toArray());
+      }
+    }
+
+    collisions.sort((a, b) -> a.length != b.length ? Integer.compare(b.length, a.length) : Integer.compare(a[0], b[0]));
+
+    return collisions;
+  }
+
+  private static void writeObject(JsonGenerator generator, GameObject object, GameObject owner, LatLonCalculator latLonCalculator) {
+    generator.writeStartObject();
+
+    generator.write("index", object.getId());
+    String className = object.getClassString();
+    generator.write("class", className);
+    if (object.isItem()) {
+      generator.write("type", DataManager.hasItem(className) ? DataManager.getItem(className).getName() : className);
+    } else {
+      generator.write("type", DataManager.hasCreature(className) ? DataManager.getCreature(className).getName() : className);
+    }
+
+    if (owner != null) {
+      if (owner != object) {
+        generator.write("owner", owner.getId());
+        generator.write("ownerClass", owner.getClassString());
+      }
+
+      owner.findPropertyValue("TargetingTeam", Integer.class).ifPresent(team -> generator.write("team", team));
+
+      LocationData location = owner.getLocation();
+      if (location != null) {
+        generator.write("x", location.getX());
+        generator.write("y", location.getY());
+        generator.write("z", location.getZ());
+        generator.write("lat", latLonCalculator.calculateLat(location.getY()));
+        generator.write("lon", latLonCalculator.calculateLon(location.getX()));
+      }
+    }
+
+    generator.writeEnd();
+  }
+
+}
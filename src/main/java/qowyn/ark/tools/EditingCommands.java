@@ -6,8 +6,11 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Random;
@@ -17,6 +20,8 @@ import java.util.function.Function;
 import java.util.function.Predicate;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import javax.json.JsonArray;
 import javax.json.JsonObject;
@@ -46,6 +51,7 @@ import qowyn.ark.properties.PropertyStruct;
 import qowyn.ark.properties.PropertyUInt32;
 import qowyn.ark.structs.Struct;
 import qowyn.ark.structs.StructPropertyList;
+import qowyn.ark.structs.StructUniqueNetIdRepl;
 import qowyn.ark.tools.data.ArkItem;
 import qowyn.ark.tools.data.AttributeNames;
 import qowyn.ark.types.ArkName;
@@ -54,7 +60,11 @@ import qowyn.ark.types.ObjectReference;
 public class EditingCommands {
 
   public static void feed(OptionHandler oh) {
-    List<String> params = oh.getParams();
+    OptionSpec<Void> patchSpec = oh.accepts("patch", "Copy SAVE and overwrite only the changed values instead of writing the whole save.");
+
+    OptionSet options = oh.reparse();
+
+    List<String> params = oh.getParams(options);
     if (params.size() != 2 || oh.wantsHelp()) {
       oh.printCommandHelp();
       System.exit(1);
@@ -77,6 +87,8 @@ public class EditingCommands {
 
       stopwatch.stop("Reading");
 
+      SavePatcher patcher = options.has(patchSpec) ? new SavePatcher(savegame, fileToRead) : null;
+
       savegame.getObjects().parallelStream().filter(c -> CommonFunctions.onlyTamed(c, savegame)).forEach(object -> {
         ObjectReference statusComponentReference = object.getPropertyValue("MyCharacterStatusComponent", ObjectReference.class);
 
@@ -86,6 +98,9 @@ public class EditingCommands {
             PropertyFloat currentFood = status.getTypedProperty("CurrentStatusValues", PropertyFloat.class, 4);
             if (currentFood != null) {
               currentFood.setValue(1000000.0f);
+              if (patcher != null) {
+                patcher.record(status, currentFood);
+              }
             }
           }
         }
@@ -93,12 +108,93 @@ public class EditingCommands {
         PropertyDouble lastEnterStasisTime = object.getTypedProperty("LastEnterStasisTime", PropertyDouble.class);
         if (lastEnterStasisTime != null) {
           lastEnterStasisTime.setValue((double) savegame.getGameTime());
+          if (patcher != null) {
+            patcher.record(object, lastEnterStasisTime);
+          }
         }
       });
 
       stopwatch.stop("Setting values");
 
-      savegame.writeBinary(fileToWrite.toString(), oh.writingOptions());
+      if (patcher != null) {
+        patcher.write(fileToWrite);
+      } else {
+        savegame.writeBinary(fileToWrite.toString(), oh.writingOptions());
+      }
+
+      stopwatch.stop("Writing");
+
+      stopwatch.print();
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  public static void edit(OptionHandler oh) {
+    OptionSpec<Void> patchSpec = oh.accepts("patch", "Copy SAVE and overwrite only the changed values if possible instead of writing the whole save.");
+
+    OptionSet options = oh.reparse();
+
+    List<String> params = oh.getParams(options);
+    if (params.size() != 3 || oh.wantsHelp()) {
+      oh.printCommandHelp();
+      System.exit(1);
+      return;
+    }
+
+    Path fileToRead = Paths.get(params.get(0)).toAbsolutePath();
+    Path editPath = Paths.get(params.get(1)).toAbsolutePath();
+    Path fileToWrite = Paths.get(params.get(2)).toAbsolutePath();
+
+    if (fileToRead.equals(fileToWrite)) {
+      System.err.println("save and newsave need to be different paths");
+      System.exit(2);
+      return;
+    }
+
+    try {
+      JsonStructure structure = CommonFunctions.readJson(editPath.toString());
+
+      if (structure.getValueType() != JsonValue.ValueType.OBJECT) {
+        System.err.println("Expected object in " + editPath + " but found " + structure.getValueType());
+        System.exit(2);
+        return;
+      }
+
+      Stopwatch stopwatch = new Stopwatch(oh.useStopwatch());
+
+      ArkSavegame savegame = new ArkSavegame(fileToRead.toString(), oh.readingOptions());
+
+      stopwatch.stop("Reading");
+
+      List<BulkEdit> edits = BulkEdit.readJson((JsonObject) structure, savegame.getGameTime());
+
+      SavePatcher patcher = options.has(patchSpec) ? new SavePatcher(savegame, fileToRead) : null;
+
+      long changed = savegame.getObjects().parallelStream().mapToLong(object -> {
+        int count = 0;
+        for (BulkEdit edit : edits) {
+          if (edit.matches(object, savegame)) {
+            count += edit.apply(object, savegame, patcher);
+          }
+        }
+        return count;
+      }).sum();
+
+      stopwatch.stop("Setting values");
+
+      if (!oh.isQuiet()) {
+        System.out.println("Changed " + changed + " properties");
+      }
+
+      if (patcher != null && patcher.isComplete()) {
+        patcher.write(fileToWrite);
+      } else {
+        if (patcher != null && !oh.isQuiet()) {
+          System.out.println("Not all changes can be patched, writing whole save");
+        }
+        savegame.writeBinary(fileToWrite.toString(), oh.writingOptions());
+      }
 
       stopwatch.stop("Writing");
 
@@ -112,12 +208,16 @@ public class EditingCommands {
     OptionSpec<String> creatureSpec = oh.accepts("creature", "Export creature by Name - required if object not set").withRequiredArg().describedAs("name");
     OptionSpec<Long> dinoIdSpec = oh.accepts("dinoid", "Export creature by DinoID - required if object not set").withRequiredArg().ofType(Long.class).describedAs("id");
     OptionSpec<Integer> objectSpec = oh.accepts("object", "Export object by index - required if creature not set").withRequiredArg().ofType(Integer.class).describedAs("index");
+    OptionSpec<String> listSpec = oh.accepts("list", "Export everything listed in <file>, one DinoID, 'name:<name>' or 'index:<index>' per line. JSON is a directory unless --combined is set.").withRequiredArg().describedAs("file");
+    OptionSpec<Integer> teamSpec = oh.accepts("team", "Export all tamed creatures of the given tribe/team. JSON is a directory unless --combined is set.").withRequiredArg().ofType(Integer.class).describedAs("team");
+    OptionSpec<Void> combinedSpec = oh.accepts("combined", "Write all objects selected by --list or --team into a single JSON file.");
 
     OptionSet options = oh.reparse();
 
     List<String> params = oh.getParams(options);
 
-    if (params.size() != 2 || oh.wantsHelp() || !(options.has(creatureSpec) || options.has(objectSpec) || options.has(dinoIdSpec))) {
+    boolean batch = options.has(listSpec) || options.has(teamSpec);
+    if (params.size() != 2 || oh.wantsHelp() || !(options.has(creatureSpec) || options.has(objectSpec) || options.has(dinoIdSpec) || batch)) {
       oh.printCommandHelp();
       System.exit(1);
       return;
@@ -132,6 +232,11 @@ public class EditingCommands {
       return;
     }
 
+    if (batch) {
+      exportBatch(oh, fileToRead, fileToWrite, options.has(listSpec) ? Paths.get(options.valueOf(listSpec)) : null, options.valueOf(teamSpec), options.has(combinedSpec));
+      return;
+    }
+
     try {
       Stopwatch stopwatch = new Stopwatch(oh.useStopwatch());
 
@@ -161,16 +266,10 @@ public class EditingCommands {
         long id = dinoIdSpec.value(options);
 
         for (GameObject creature : savegame.getObjects()) {
-          Integer dinoID1 = creature.getPropertyValue("DinoID1", Integer.class);
-          if (dinoID1 != null) {
-            Integer dinoID2 = creature.getPropertyValue("DinoID2", Integer.class);
-            if (dinoID2 != null) {
-              long otherId = (long) dinoID1 << Integer.SIZE | (dinoID2 & 0xFFFFFFFFL);
-              if (id == otherId) {
-                collector = new ObjectCollector(savegame, creature);
-                break;
-              }
-            }
+          long otherId = CommonFunctions.getDinoId(creature);
+          if (otherId != 0 && id == otherId) {
+            collector = new ObjectCollector(savegame, creature);
+            break;
           }
         }
 
@@ -212,6 +311,120 @@ public class EditingCommands {
     }
   }
 
+  private static void exportBatch(OptionHandler oh, Path fileToRead, Path fileToWrite, Path listFile, Integer team, boolean combined) {
+    try {
+      List<String> listEntries = listFile != null ? Files.readAllLines(listFile) : Collections.emptyList();
+
+      Stopwatch stopwatch = new Stopwatch(oh.useStopwatch());
+
+      ArkSavegame savegame = new ArkSavegame(fileToRead.toString(), oh.readingOptions());
+      List<GameObject> objects = savegame.getObjects();
+
+      stopwatch.stop("Loading");
+
+      // Lookup index, built once for all list entries
+      LongIntHashMap dinoIdIndex = new LongIntHashMap(1024, -1);
+      Map<String, Integer> nameIndex = new HashMap<>();
+      for (GameObject object : objects) {
+        long dinoId = CommonFunctions.getDinoId(object);
+        if (dinoId != 0) {
+          dinoIdIndex.putIfAbsent(dinoId, object.getId());
+        }
+
+        String name = object.getPropertyValue("TamedName", String.class);
+        if (name != null) {
+          nameIndex.putIfAbsent(name, object.getId());
+        }
+      }
+
+      Set<GameObject> targets = new LinkedHashSet<>();
+      for (String line : listEntries) {
+        String entry = line.trim();
+        if (entry.isEmpty() || entry.startsWith("#")) {
+          continue;
+        }
+
+        int index;
+        try {
+          if (entry.startsWith("name:")) {
+            index = nameIndex.getOrDefault(entry.substring(5), -1);
+          } else if (entry.startsWith("index:")) {
+            index = Integer.parseInt(entry.substring(6).trim());
+            index = index >= 0 && index < objects.size() ? index : -1;
+          } else {
+            index = dinoIdIndex.get(Long.parseLong(entry));
+          }
+        } catch (NumberFormatException e) {
+          index = -1;
+        }
+
+        if (index == -1) {
+          System.err.println("Could not find " + entry);
+          continue;
+        }
+
+        targets.add(objects.get(index));
+      }
+
+      if (team != null) {
+        objects.stream()
+            .filter(CreatureListCommands::onlyCreatures)
+            .filter(object -> CommonFunctions.onlyTamed(object, savegame))
+            .filter(object -> object.findPropertyValue("TargetingTeam", Integer.class).orElse(0).equals(team))
+            .forEach(targets::add);
+      }
+
+      if (targets.isEmpty()) {
+        System.err.println("Nothing to export");
+        System.exit(2);
+        return;
+      }
+
+      stopwatch.stop("Selecting");
+
+      if (combined) {
+        ObjectCollector collector = new ObjectCollector(savegame, targets);
+
+        ArkContainer export = new ArkContainer();
+        export.getObjects().addAll(collector.remap(0));
+
+        stopwatch.stop("Collecting");
+
+        CommonFunctions.writeJson(fileToWrite.toString(), export::writeJson, oh);
+      } else {
+        Files.createDirectories(fileToWrite);
+
+        // Subgraphs might overlap, every export works on its own copies
+        targets.parallelStream().forEach(target -> {
+          ObjectCollector collector = new ObjectCollector(savegame, target);
+          collector.detach();
+
+          long dinoId = CommonFunctions.getDinoId(target);
+          String fileName = (dinoId != 0 ? Long.toString(dinoId) : "object_" + target.getId()) + ".json";
+
+          ArkContainer export = new ArkContainer();
+          export.getObjects().addAll(collector.remap(0));
+
+          try {
+            CommonFunctions.writeJsonIfChanged(fileToWrite.resolve(fileName), export::writeJson, oh);
+          } catch (IOException e) {
+            throw new RuntimeException(e);
+          }
+        });
+      }
+
+      stopwatch.stop("Writing");
+
+      if (!oh.isQuiet()) {
+        System.out.println("Exported " + targets.size() + " objects");
+      }
+
+      stopwatch.print();
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
   private static final ArkName CLOUD_INVENTORY_CLASS = ArkName.constantPlain("ArkCloudInventoryData");
 
   private static final ArkName CLOUD_INVENTORY_NAME = ArkName.constant("ArkCloudInventoryData", 42);
@@ -222,14 +435,14 @@ public class EditingCommands {
     OptionSet options = oh.reparse();
 
     List<String> params = oh.getParams(options);
-    if (params.size() != 3 || oh.wantsHelp()) {
+    if (params.size() < 3 || oh.wantsHelp()) {
       oh.printCommandHelp();
       System.exit(1);
       return;
     }
 
     Path fileToRead = Paths.get(params.get(0)).toAbsolutePath();
-    Path fileToWrite = Paths.get(params.get(2)).toAbsolutePath();
+    Path fileToWrite = Paths.get(params.get(params.size() - 1)).toAbsolutePath();
 
     if (fileToRead.equals(fileToWrite)) {
       System.err.println("save and outfile need to be different paths");
@@ -242,18 +455,39 @@ public class EditingCommands {
 
       FileFormat fileFormat = options.has(fileFormatSpec) ? FileFormat.valueOf(options.valueOf(fileFormatSpec)) : FileFormat.fromExtension(fileToRead);
 
-      ArkContainer jsonFile = new ArkContainer((JsonArray) CommonFunctions.readJson(params.get(1)));
-      stopwatch.stop("Reading import container");
+      // Every parameter between SAVE and NEW_SAVE is a container or a directory of containers
+      List<Path> importPaths = new ArrayList<>();
+      for (String param : params.subList(1, params.size() - 1)) {
+        Path importPath = Paths.get(param);
+        if (Files.isDirectory(importPath)) {
+          try (Stream<Path> files = Files.list(importPath)) {
+            files.filter(path -> path.getFileName().toString().endsWith(".json")).sorted().forEach(importPaths::add);
+          }
+        } else {
+          importPaths.add(importPath);
+        }
+      }
+
+      List<ArkContainer> jsonFiles = importPaths.parallelStream().map(importPath -> {
+        try {
+          return new ArkContainer((JsonArray) CommonFunctions.readJson(importPath.toString()));
+        } catch (IOException e) {
+          throw new RuntimeException(e);
+        }
+      }).collect(Collectors.toList());
+      stopwatch.stop("Reading import containers");
 
-      boolean containsCreature = jsonFile.getObjects().stream().anyMatch(o -> o.getClassString().contains("_Character_"));
+      boolean containsCreature = jsonFiles.stream().flatMap(jsonFile -> jsonFile.getObjects().stream()).anyMatch(o -> o.getClassString().contains("_Character_"));
 
       if (fileFormat == FileFormat.MAP) {
         ArkSavegame savegame = new ArkSavegame(fileToRead.toString(), oh.readingOptions());
+        CopyThroughWriter writer = new CopyThroughWriter(savegame, fileToRead);
         stopwatch.stop("Reading save");
 
-        importIntoSavegame(savegame, jsonFile, stopwatch);
+        // Imported objects are appended, everything already in the save stays as it is
+        importIntoSavegame(savegame, jsonFiles, stopwatch);
 
-        savegame.writeBinary(fileToWrite.toString(), oh.writingOptions());
+        writeSavegame(savegame, writer, fileToWrite, oh);
 
         stopwatch.stop("Writing");
       } else if (fileFormat == FileFormat.CLUSTER) {
@@ -262,21 +496,11 @@ public class EditingCommands {
           System.exit(1);
         } else {
           DataManager.loadData(oh.lang());
-          ArkCloudInventory cloudInventory;
-          if (Files.exists(fileToRead) && Files.size(fileToRead) > 0) {
-            cloudInventory = new ArkCloudInventory(fileToRead.toString(), oh.readingOptions());
-          } else {
-            cloudInventory = new ArkCloudInventory();
-            cloudInventory.setInventoryVersion(1);
-            cloudInventory.setInventoryData(new GameObject());
-            cloudInventory.getInventoryData().setClassName(CLOUD_INVENTORY_CLASS);
-            cloudInventory.getInventoryData().setItem(true);
-            cloudInventory.getInventoryData().setNames(new ArrayList<>());
-            cloudInventory.getInventoryData().getNames().add(CLOUD_INVENTORY_NAME);
-            cloudInventory.getInventoryData().setExtraData(new ExtraDataZero());
-          }
+          ArkCloudInventory cloudInventory = readCloudInventory(oh, fileToRead);
 
-          importIntoClusterData(cloudInventory, jsonFile, stopwatch);
+          for (ArkContainer jsonFile : jsonFiles) {
+            importIntoClusterData(cloudInventory, jsonFile, stopwatch);
+          }
 
           cloudInventory.writeBinary(fileToWrite.toString(), oh.writingOptions());
 
@@ -290,7 +514,9 @@ public class EditingCommands {
           DataManager.loadData(oh.lang());
           ArkLocalProfile localInventory = new ArkLocalProfile(fileToRead.toString(), oh.readingOptions());
 
-          importIntoClusterData(localInventory, jsonFile, stopwatch);
+          for (ArkContainer jsonFile : jsonFiles) {
+            importIntoClusterData(localInventory, jsonFile, stopwatch);
+          }
 
           localInventory.writeBinary(fileToWrite.toString(), oh.writingOptions());
 
@@ -309,32 +535,166 @@ public class EditingCommands {
     }
   }
 
-  private static void importIntoSavegame(ArkSavegame savegame, GameObjectContainer importFile, Stopwatch stopwatch) {
-    ObjectCollector collector = new ObjectCollector(importFile);
+  /**
+   * Reads {@code path} or creates an empty cloud inventory if there is no such file yet.
+   */
+  private static ArkCloudInventory readCloudInventory(OptionHandler oh, Path path) throws IOException {
+    if (Files.exists(path) && Files.size(path) > 0) {
+      return new ArkCloudInventory(path.toString(), oh.readingOptions());
+    }
 
-    int startIndex = savegame.getObjects().size();
+    ArkCloudInventory cloudInventory = new ArkCloudInventory();
+    cloudInventory.setInventoryVersion(1);
+    cloudInventory.setInventoryData(new GameObject());
+    cloudInventory.getInventoryData().setClassName(CLOUD_INVENTORY_CLASS);
+    cloudInventory.getInventoryData().setItem(true);
+    cloudInventory.getInventoryData().setNames(new ArrayList<>());
+    cloudInventory.getInventoryData().getNames().add(CLOUD_INVENTORY_NAME);
+    cloudInventory.getInventoryData().setExtraData(new ExtraDataZero());
+    return cloudInventory;
+  }
 
-    List<GameObject> remappedObjects = collector.remap(startIndex);
+  private static final Set<String> OWNER_PROPERTIES = new HashSet<>(Arrays.asList("PlayerDataID", "UniqueID"));
 
-    stopwatch.stop("Rewriting object ids");
+  public static void saveToCluster(OptionHandler oh) {
+    OptionSpec<Integer> teamSpec = oh.accepts("team", "Only upload creatures of TEAM.").withRequiredArg().ofType(Integer.class);
+    OptionSpec<Integer> playerSpec = oh.accepts("player", "Only upload creatures owned by the player with PLAYER_ID.").withRequiredArg().ofType(Integer.class);
+    OptionSpec<String> listSpec = oh.accepts("list", "Only upload creatures whose DinoID is listed in FILE, one per line.").withRequiredArg().describedAs("FILE");
+    OptionSpec<String> ownerSpec = oh.accepts("owner", "Upload all creatures into the cluster file of STEAM_ID instead of the files of their owners.").withRequiredArg()
+        .describedAs("STEAM_ID");
 
-    Set<Long> dinoIDs = new HashSet<>(); // Stored as 2 UInt32
-    Set<Long> itemIDs = new HashSet<>(); // Stored as StructPropertyList with 2 UInt32
-    Set<ArkName> names = new HashSet<>();
+    OptionSet options = oh.reparse();
 
-    for (GameObject object : savegame.getObjects()) {
-      for (ArkName name : object.getNames()) {
-        names.add(name);
+    List<String> params = oh.getParams(options);
+    if (params.size() != 2 || oh.wantsHelp()) {
+      oh.printCommandHelp();
+      System.exit(1);
+      return;
+    }
+
+    Path fileToRead = Paths.get(params.get(0)).toAbsolutePath();
+    Path clusterDirectory = Paths.get(params.get(1));
+
+    try {
+      Stopwatch stopwatch = new Stopwatch(oh.useStopwatch());
+
+      LongIntHashMap dinoIds = null;
+      if (options.has(listSpec)) {
+        dinoIds = new LongIntHashMap();
+        for (String line : Files.readAllLines(Paths.get(options.valueOf(listSpec)))) {
+          String entry = line.trim();
+          if (!entry.isEmpty() && !entry.startsWith("#")) {
+            dinoIds.put(Long.parseLong(entry), 0);
+          }
+        }
       }
 
-      Integer dinoID1 = object.getPropertyValue("DinoID1", Integer.class);
-      if (dinoID1 != null) {
-        Integer dinoID2 = object.getPropertyValue("DinoID2", Integer.class);
-        if (dinoID2 != null) {
-          long id = (long) dinoID1 << Integer.SIZE | (dinoID2 & 0xFFFFFFFFL);
-          dinoIDs.add(id);
-          continue;
+      DataManager.loadData(oh.lang());
+
+      ArkSavegame savegame = new ArkSavegame(fileToRead.toString(), oh.readingOptions());
+      stopwatch.stop("Reading save");
+
+      Integer team = options.valueOf(teamSpec);
+      Integer player = options.valueOf(playerSpec);
+      LongIntHashMap selectedIds = dinoIds;
+
+      List<GameObject> creatures = savegame.getObjects().parallelStream()
+          .filter(object -> object.getClassString().contains("_Character_") && CommonFunctions.onlyTamed(object, savegame))
+          .filter(object -> team == null || team.equals(object.getPropertyValue("TargetingTeam", Integer.class)))
+          .filter(object -> player == null || player.equals(object.getPropertyValue("OwningPlayerID", Integer.class)))
+          .filter(object -> selectedIds == null || selectedIds.containsKey(CommonFunctions.getDinoId(object)))
+          .filter(object -> {
+            if (DataManager.getCreature(object.getClassString()) == null) {
+              System.err.println("Skipping unknown creature class " + object.getClassString());
+              return false;
+            }
+            return true;
+          })
+          .collect(Collectors.toList());
+      stopwatch.stop("Selecting");
+
+      Map<String, List<GameObject>> uploads;
+      if (options.has(ownerSpec)) {
+        uploads = Collections.singletonMap(options.valueOf(ownerSpec), creatures);
+      } else {
+        // Cluster files are named after the steam id of the uploading player
+        Map<Integer, String> steamIds = new HashMap<>();
+        Set<Integer> owners = creatures.stream().map(creature -> creature.findPropertyValue("OwningPlayerID", Integer.class).orElse(0)).collect(Collectors.toSet());
+
+        try (Stream<Path> files = Files.list(fileToRead.getParent())) {
+          files.filter(path -> path.getFileName().toString().endsWith(".arkprofile")).collect(Collectors.toList()).parallelStream().forEach(path -> {
+            try {
+              StructPropertyList myData = SelectiveReader.readProfile(path, OWNER_PROPERTIES);
+              int playerId = myData.getPropertyValue("PlayerDataID", Number.class).intValue();
+              if (owners.contains(playerId)) {
+                String steamId = myData.getPropertyValue("UniqueID", StructUniqueNetIdRepl.class).getNetId();
+                synchronized (steamIds) {
+                  steamIds.put(playerId, steamId);
+                }
+              }
+            } catch (RuntimeException | IOException ex) {
+              System.err.println("Found potentially corrupt ArkProfile: " + path);
+              if (oh.isVerbose()) {
+                ex.printStackTrace();
+              }
+            }
+          });
+        }
+
+        uploads = new HashMap<>();
+        int unowned = 0;
+        for (GameObject creature : creatures) {
+          String steamId = steamIds.get(creature.findPropertyValue("OwningPlayerID", Integer.class).orElse(0));
+          if (steamId != null) {
+            uploads.computeIfAbsent(steamId, key -> new ArrayList<>()).add(creature);
+          } else {
+            unowned++;
+          }
+        }
+
+        if (unowned > 0) {
+          System.err.println("Skipped " + unowned + " creatures without known owner, use --owner to upload them.");
+        }
+      }
+      stopwatch.stop("Reading profiles");
+
+      Files.createDirectories(clusterDirectory);
+
+      uploads.entrySet().parallelStream().forEach(upload -> {
+        try {
+          Path clusterFile = clusterDirectory.resolve(upload.getKey());
+          ArkCloudInventory cloudInventory = readCloudInventory(oh, clusterFile);
+
+          addTamedDinos(cloudInventory, savegame, upload.getValue());
+
+          cloudInventory.writeBinary(clusterFile.toString(), oh.writingOptions());
+        } catch (IOException e) {
+          throw new RuntimeException(e);
         }
+      });
+      stopwatch.stop("Writing");
+
+      if (oh.isVerbose()) {
+        System.out.println("Uploaded " + creatures.size() + " creatures into " + uploads.size() + " cluster files.");
+      }
+
+      stopwatch.print();
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  private static void importIntoSavegame(ArkSavegame savegame, List<? extends GameObjectContainer> importFiles, Stopwatch stopwatch) {
+    // Collision sets are built once for all containers
+    LongIntHashMap dinoIDs = new LongIntHashMap(); // Stored as 2 UInt32
+    LongIntHashMap itemIDs = new LongIntHashMap(); // Stored as StructPropertyList with 2 UInt32
+    Set<ArkName> names = savegame.getObjects().parallelStream().flatMap(object -> object.getNames().stream()).collect(Collectors.toSet());
+
+    for (GameObject object : savegame.getObjects()) {
+      long dinoID = CommonFunctions.getDinoId(object);
+      if (dinoID != 0) {
+        dinoIDs.put(dinoID, 1);
+        continue;
       }
 
       StructPropertyList itemID = object.getPropertyValue("ItemId", StructPropertyList.class);
@@ -343,65 +703,102 @@ public class EditingCommands {
         Integer itemID2 = itemID.getPropertyValue("ItemID2", Integer.class);
         if (itemID1 != null && itemID2 != null) {
           long id = (long) itemID1 << Integer.SIZE | (itemID2 & 0xFFFFFFFFL);
-          itemIDs.add(id);
+          itemIDs.put(id, 1);
           continue;
         }
       }
     }
 
+    stopwatch.stop("Collecting ids and names");
+
     Random random = new Random();
-    for (GameObject object : remappedObjects) {
-      checkNames(object, remappedObjects, names, startIndex);
-
-      PropertyInt dinoID1 = object.getTypedProperty("DinoID1", PropertyInt.class);
-      if (dinoID1 != null) {
-        PropertyInt dinoID2 = object.getTypedProperty("DinoID2", PropertyInt.class);
-        if (dinoID2 != null) {
-          long id = (long) dinoID1.getValue() << Integer.SIZE | (dinoID2.getValue() & 0xFFFFFFFFL);
-          if (dinoIDs.contains(id)) {
-            long randomId = random.nextLong();
-            while (dinoIDs.contains(randomId)) {
-              randomId = random.nextLong();
-            }
+    for (GameObjectContainer importFile : importFiles) {
+      ObjectCollector collector = new ObjectCollector(importFile);
+
+      // Containers are appended one after another, giving each a contiguous range of ids
+      int startIndex = savegame.getObjects().size();
+
+      List<GameObject> remappedObjects = collector.remap(startIndex);
+
+      for (GameObject object : remappedObjects) {
+        checkNames(object, remappedObjects, names, startIndex);
+
+        PropertyInt dinoID1 = object.getTypedProperty("DinoID1", PropertyInt.class);
+        if (dinoID1 != null) {
+          PropertyInt dinoID2 = object.getTypedProperty("DinoID2", PropertyInt.class);
+          if (dinoID2 != null) {
+            long id = (long) dinoID1.getValue() << Integer.SIZE | (dinoID2.getValue() & 0xFFFFFFFFL);
+            if (dinoIDs.containsKey(id)) {
+              long randomId = random.nextLong();
+              while (randomId == 0 || dinoIDs.containsKey(randomId)) {
+                randomId = random.nextLong();
+              }
 
-            dinoIDs.add(randomId);
-            dinoID1.setValue((int) (randomId >> 32));
-            dinoID2.setValue((int) randomId);
+              id = randomId;
+              dinoID1.setValue((int) (randomId >> 32));
+              dinoID2.setValue((int) randomId);
+            }
+            dinoIDs.put(id, 1);
+            continue;
           }
-          continue;
         }
-      }
 
-      StructPropertyList itemID = object.getPropertyValue("ItemId", StructPropertyList.class);
-      if (itemID != null) {
-        PropertyInt itemID1 = itemID.getTypedProperty("ItemID1", PropertyInt.class);
-        PropertyInt itemID2 = itemID.getTypedProperty("ItemID2", PropertyInt.class);
-        if (itemID1 != null && itemID2 != null) {
-          long id = (long) itemID1.getValue() << Integer.SIZE | (itemID2.getValue() & 0xFFFFFFFFL);
-          if (itemIDs.contains(id)) {
-            long randomId = random.nextLong();
-            while (itemIDs.contains(randomId)) {
-              randomId = random.nextLong();
-            }
+        StructPropertyList itemID = object.getPropertyValue("ItemId", StructPropertyList.class);
+        if (itemID != null) {
+          PropertyInt itemID1 = itemID.getTypedProperty("ItemID1", PropertyInt.class);
+          PropertyInt itemID2 = itemID.getTypedProperty("ItemID2", PropertyInt.class);
+          if (itemID1 != null && itemID2 != null) {
+            long id = (long) itemID1.getValue() << Integer.SIZE | (itemID2.getValue() & 0xFFFFFFFFL);
+            if (itemIDs.containsKey(id)) {
+              long randomId = random.nextLong();
+              while (randomId == 0 || itemIDs.containsKey(randomId)) {
+                randomId = random.nextLong();
+              }
 
-            itemIDs.add(randomId);
-            itemID1.setValue((int) (randomId >> 32));
-            itemID2.setValue((int) randomId);
+              id = randomId;
+              itemID1.setValue((int) (randomId >> 32));
+              itemID2.setValue((int) randomId);
+            }
+            itemIDs.put(id, 1);
+            continue;
           }
-          continue;
         }
       }
-    }
 
-    stopwatch.stop("Rewriting properties");
+      // Later containers must not reuse names of this one
+      for (GameObject object : remappedObjects) {
+        names.addAll(object.getNames());
+      }
+
+      savegame.getObjects().addAll(remappedObjects);
+    }
 
-    savegame.getObjects().addAll(remappedObjects);
+    stopwatch.stop("Remapping and rewriting properties");
   }
 
   private static final ArkName ARK_INVENTORY_DATA = ArkName.constantPlain("ArkInventoryData");
 
   private static void importIntoClusterData(PropertyContainer container, ArkContainer importFile, Stopwatch stopwatch) {
+    List<GameObject> creatures = importFile.getObjects().stream().filter(o -> o.getClassString().contains("_Character_")).collect(Collectors.toList());
+
+    for (GameObject creature : creatures) {
+      if (DataManager.getCreature(creature.getClassString()) == null) {
+        System.err.println("Unknown creature class " + creature.getClassString());
+        System.exit(1);
+        return;
+      }
+    }
+
+    addTamedDinos(container, importFile, creatures);
+
+    stopwatch.stop("Serializing creatures");
+  }
 
+  /**
+   * Appends an ArkTamedDinosData entry for each of {@code creatures} to {@code container}.
+   * All creatures need to be known to the DataManager.
+   */
+  private static void addTamedDinos(PropertyContainer container, GameObjectContainer source, List<GameObject> creatures) {
     StructPropertyList arkData = container.getPropertyValue("MyArkData", StructPropertyList.class);
     if (arkData == null) {
       arkData = new StructPropertyList();
@@ -414,50 +811,82 @@ public class EditingCommands {
       arkData.getProperties().add(new PropertyArray("ArkTamedDinosData", tamedDinosData));
     }
 
-    for (GameObject creature : importFile.getObjects()) {
-      if (creature.getClassString().contains("_Character_")) {
-        CreatureData creatureData = DataManager.getCreature(creature.getClassString());
+    // Every creature gets only its own objects, serialized once
+    List<StructPropertyList> creatureStructs = creatures.parallelStream().map(creature -> {
+      CreatureData creatureData = DataManager.getCreature(creature.getClassString());
 
-        if (creatureData == null) {
-          System.err.println("Unknown creature class " + creature.getClassString());
-          System.exit(1);
-          return;
-        }
+      StructPropertyList creatureStruct = new StructPropertyList();
+      List<Property<?>> creatureProperties = creatureStruct.getProperties();
 
-        StructPropertyList creatureStruct = new StructPropertyList();
-        List<Property<?>> creatureProperties = creatureStruct.getProperties();
+      creatureProperties.add(new PropertyStr("DinoClassName", "Blueprint'" + creatureData.getPackagePath() + "." + creatureData.getBlueprint() + "'"));
 
-        creatureProperties.add(new PropertyStr("DinoClassName", "Blueprint'" + creatureData.getPackagePath() + "." + creatureData.getBlueprint() + "'"));
+      ObjectReference dinoClass = new ObjectReference();
+      dinoClass.setObjectType(ObjectReference.TYPE_PATH);
+      dinoClass.setObjectString(ArkName.from("BlueprintGeneratedClass " + creatureData.getPackagePath() + "." + creatureData.getClassName()));
+      creatureProperties.add(new PropertyObject("DinoClass", dinoClass));
 
-        ObjectReference dinoClass = new ObjectReference();
-        dinoClass.setObjectType(ObjectReference.TYPE_PATH);
-        dinoClass.setObjectString(ArkName.from("BlueprintGeneratedClass " + creatureData.getPackagePath() + "." + creatureData.getClassName()));
-        creatureProperties.add(new PropertyObject("DinoClass", dinoClass));
+      // Needs to be computed before remapping
+      int fullLevel = CommonFunctions.getFullLevel(creature, source);
+      float experience = creature.findPropertyValue("MyCharacterStatusComponent", ObjectReference.class)
+          .map(source::getObject).map(o -> o.getPropertyValue("ExperiencePoints", Float.class)).orElse(0.0f);
 
-        creatureProperties.add(new PropertyArray("DinoData", importFile.toByteArray()));
+      creatureProperties.add(new PropertyArray("DinoData", collectCreature(source, creature).toByteArray()));
 
-        String tamedName = creature.findPropertyValue("TamedName", String.class).orElse(creatureData.getName());
-        String fullName = tamedName + " - Lvl " + CommonFunctions.getFullLevel(creature, importFile) + " (" + creatureData.getName() + ")";
-        creatureProperties.add(new PropertyStr("DinoName", fullName));
+      String tamedName = creature.findPropertyValue("TamedName", String.class).orElse(creatureData.getName());
+      String fullName = tamedName + " - Lvl " + fullLevel + " (" + creatureData.getName() + ")";
+      creatureProperties.add(new PropertyStr("DinoName", fullName));
 
-        creatureProperties.add(new PropertyStr("DinoNameInMap", creature.getNames().get(0).toString()));
+      creatureProperties.add(new PropertyStr("DinoNameInMap", creature.getNames().get(0).toString()));
 
-        for (int i = 0; i < AttributeNames.size(); i++) {
-          creatureProperties.add(new PropertyStr("DinoStats", i, AttributeNames.get(i)));
-        }
+      for (int i = 0; i < AttributeNames.size(); i++) {
+        creatureProperties.add(new PropertyStr("DinoStats", i, AttributeNames.get(i)));
+      }
+
+      creatureProperties.add(new PropertyFloat("DinoExperiencePoints", experience));
 
-        float experience = creature.findPropertyValue("MyCharacterStatusComponent", ObjectReference.class)
-            .map(importFile::getObject).map(o -> o.getPropertyValue("ExperiencePoints", Float.class)).orElse(0.0f);
-        creatureProperties.add(new PropertyFloat("DinoExperiencePoints", experience));
+      creatureProperties.add(new PropertyFloat("Version", 2.0f));
+      creatureProperties.add(new PropertyUInt32("DinoID1", creature.findPropertyValue("DinoID1", Integer.class).orElse(0)));
+      creatureProperties.add(new PropertyUInt32("DinoID2", creature.findPropertyValue("DinoID2", Integer.class).orElse(0)));
+      creatureProperties.add(new PropertyInt("UploadTime", (int) Instant.now().getEpochSecond()));
 
-        creatureProperties.add(new PropertyFloat("Version", 2.0f));
-        creatureProperties.add(new PropertyUInt32("DinoID1", creature.findPropertyValue("DinoID1", Integer.class).orElse(0)));
-        creatureProperties.add(new PropertyUInt32("DinoID2", creature.findPropertyValue("DinoID2", Integer.class).orElse(0)));
-        creatureProperties.add(new PropertyInt("UploadTime", (int) Instant.now().getEpochSecond()));
+      return creatureStruct;
+    }).collect(Collectors.toList());
+
+    tamedDinosData.addAll(creatureStructs);
+  }
 
-        tamedDinosData.add(creatureStruct);
+  /**
+   * Collects {@code creature}, its components and the items in its inventories into a new container, creature first.
+   * References to anything else, like the rider or the structure it is attached to, are cut.
+   * Works on copies, {@code container} stays untouched.
+   */
+  protected static ArkContainer collectCreature(GameObjectContainer container, GameObject creature) {
+    Predicate<GameObject> componentOfCreature = object -> {
+      List<ArkName> names = object.getNames();
+      int depth = creature.getNames().size();
+      return !object.isItem() && names.size() > depth && names.subList(names.size() - depth, names.size()).equals(creature.getNames());
+    };
+
+    Predicate<GameObject> partOfCreature = object -> {
+      if (!object.isItem()) {
+        return componentOfCreature.test(object);
       }
-    }
+
+      GameObject inventory = object.findPropertyValue("OwnerInventory", ObjectReference.class).map(container::getObject).orElse(null);
+      return inventory != null && componentOfCreature.test(inventory);
+    };
+
+    ObjectCollector collector = new ObjectCollector(container, Collections.singletonList(creature), partOfCreature) {
+      @Override
+      protected void applyOrderRules(List<GameObject> remappedList) {
+        remappedList.add(getMappedObjects().get(creature.getId()));
+      }
+    };
+    collector.detach();
+
+    ArkContainer creatureContainer = new ArkContainer();
+    creatureContainer.getObjects().addAll(collector.remap(0));
+    return creatureContainer;
   }
 
   private static void checkNames(GameObject object, List<GameObject> remappedObjects, Set<ArkName> names, int startIndex) {
@@ -584,13 +1013,14 @@ public class EditingCommands {
         localInventory.writeBinary(fileToWrite.toString(), oh.writingOptions());
       } else if (fileFormat == FileFormat.MAP) {
         ArkSavegame savegame = new ArkSavegame(fileToRead.toString(), oh.readingOptions());
+        CopyThroughWriter writer = new CopyThroughWriter(savegame, fileToRead);
 
-        int modifications = modifySavegame(savegame, modificationFile);
+        int modifications = modifySavegame(savegame, modificationFile, writer);
         if (!oh.isQuiet()) {
           System.out.println("Modifications done: " + modifications);
         }
 
-        savegame.writeBinary(fileToWrite.toString(), oh.writingOptions());
+        writeSavegame(savegame, writer, fileToWrite, oh);
       } else {
         System.err.println("Modifying " + fileFormat + " is not yet implemented.");
         System.exit(1);
@@ -600,6 +1030,20 @@ public class EditingCommands {
     }
   }
 
+  /**
+   * Copies unchanged objects straight from the source if possible, writes the whole save otherwise.
+   */
+  private static void writeSavegame(ArkSavegame savegame, CopyThroughWriter writer, Path fileToWrite, OptionHandler oh) throws IOException {
+    if (writer.isSupported()) {
+      writer.write(fileToWrite);
+    } else {
+      if (oh.isVerbose()) {
+        System.err.println("Writing the whole save, unchanged objects can't be copied: " + writer.getUnsupportedReason());
+      }
+      savegame.writeBinary(fileToWrite.toString(), oh.writingOptions());
+    }
+  }
+
   private static final Pattern BLUEPRINT_PATTERN = Pattern.compile("Blueprint'([^']+)'");
 
   private static int modifyClusterData(PropertyContainer container, ModificationFile modificationFile) {
@@ -671,7 +1115,7 @@ public class EditingCommands {
     return modifications;
   }
 
-  private static int modifySavegame(ArkSavegame savegame, ModificationFile modificationFile) {
+  private static int modifySavegame(ArkSavegame savegame, ModificationFile modificationFile, CopyThroughWriter writer) {
     int modifications = 0;
     Map<GameObject, List<ArkItem>> replaceDefaultInventories = new HashMap<>();
     Map<GameObject, List<ArkItem>> replaceInventories = new HashMap<>();
@@ -830,8 +1274,33 @@ public class EditingCommands {
       }
     }
 
-    savegame.getObjects().clear();
-    savegame.getObjects().addAll(collector.remap(0));
+    // Only the changed inventories and new items have to be encoded again
+    Stream.of(replaceDefaultInventories, addDefaultInventories, replaceInventories, addInventories)
+        .flatMap(inventories -> inventories.keySet().stream())
+        .forEach(writer::markDirty);
+
+    // Existing objects keep their ids unless something has been removed, new objects get ids after them
+    List<GameObject> objects = savegame.getObjects();
+    int originalCount = objects.size();
+    Map<Integer, GameObject> mappedObjects = collector.getMappedObjects();
+
+    mappedObjects.keySet().stream().filter(id -> id >= originalCount).sorted().forEach(id -> {
+      GameObject added = mappedObjects.get(id);
+      added.setId(id);
+      objects.add(added);
+    });
+
+    if (mappedObjects.size() < objects.size()) {
+      ConcurrentBitSet keep = new ConcurrentBitSet(objects.size());
+      mappedObjects.keySet().forEach(keep::set);
+
+      ObjectCompactor compactor = new ObjectCompactor(objects, keep);
+      List<GameObject> remaining = compactor.compact();
+      remaining.stream().filter(object -> compactor.isChanged(object.getId())).forEach(writer::markDirty);
+
+      objects.clear();
+      objects.addAll(remaining);
+    }
 
     return modifications;
   }
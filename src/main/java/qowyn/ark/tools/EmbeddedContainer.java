@@ -0,0 +1,92 @@
+package qowyn.ark.tools;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import qowyn.ark.ArkArchive;
+import qowyn.ark.GameObject;
+import qowyn.ark.GameObjectContainer;
+import qowyn.ark.types.ObjectReference;
+
+/**
+ * Read-only view of a serialized ArkContainer, like the DinoData of uploaded creatures.
+ *
+ * Only the object headers are decoded up front. Properties of an object are decoded the first time it
+ * is requested through {@link #getObject(ObjectReference)} or {@link #getLoaded(int)}.
+ */
+public class EmbeddedContainer implements GameObjectContainer {
+
+  private final ArkArchive archive;
+
+  private final List<GameObject> objects;
+
+  private final boolean[] loaded;
+
+  public EmbeddedContainer(List<Byte> data) {
+    this(toByteBuffer(data));
+  }
+
+  public EmbeddedContainer(ByteBuffer buffer) {
+    archive = new ArkArchive(buffer.order(ByteOrder.LITTLE_ENDIAN));
+
+    int objectCount = archive.getInt();
+    objects = new ArrayList<>(objectCount);
+    for (int i = 0; i < objectCount; i++) {
+      GameObject object = new GameObject(archive);
+      object.setId(i);
+      objects.add(object);
+    }
+
+    loaded = new boolean[objectCount];
+  }
+
+  /**
+   * ArkArrayUInt8 and ArkArrayInt8 hold boxed bytes, unboxing them is the only copy made.
+   */
+  private static ByteBuffer toByteBuffer(List<Byte> data) {
+    byte[] bytes = new byte[data.size()];
+    int index = 0;
+    for (Byte value : data) {
+      bytes[index++] = value;
+    }
+    return ByteBuffer.wrap(bytes);
+  }
+
+  /**
+   * @return all objects, properties are only present for objects which have been loaded
+   */
+  @Override
+  public List<GameObject> getObjects() {
+    return Collections.unmodifiableList(objects);
+  }
+
+  @Override
+  public GameObject getObject(ObjectReference reference) {
+    if (reference == null || reference.getObjectType() != ObjectReference.TYPE_ID) {
+      return null;
+    }
+
+    int id = reference.getObjectId();
+    return id >= 0 && id < objects.size() ? getLoaded(id) : null;
+  }
+
+  /**
+   * @return object at {@code index} with its properties decoded
+   */
+  public synchronized GameObject getLoaded(int index) {
+    GameObject object = objects.get(index);
+    if (!loaded[index]) {
+      object.loadProperties(archive, index + 1 < objects.size() ? objects.get(index + 1) : null, 0);
+      loaded[index] = true;
+    }
+    return object;
+  }
+
+  public int size() {
+    return objects.size();
+  }
+
+}
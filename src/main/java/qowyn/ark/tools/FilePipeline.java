@@ -0,0 +1,101 @@
+package qowyn.ark.tools;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reads files on one pool and writes their output on another.
+ *
+ * The write pool has a bounded queue, if writing falls behind reader threads write themselves
+ * instead of piling up parsed files in memory.
+ */
+public class FilePipeline {
+
+  /**
+   * Parses {@code path}, can be called from multiple threads.
+   *
+   * @return action writing the output for {@code path} or null if there is nothing to write
+   */
+  @FunctionalInterface
+  public interface Reader {
+
+    Runnable read(Path path) throws IOException;
+
+  }
+
+  /**
+   * Reads and writes all {@code paths}, one after another in the calling thread unless {@code parallel} is set.
+   * Returns after all output has been written.
+   */
+  public static void run(Collection<Path> paths, boolean parallel, Reader reader) throws IOException {
+    if (!parallel) {
+      for (Path path : paths) {
+        Runnable writer = reader.read(path);
+        if (writer != null) {
+          writer.run();
+        }
+      }
+      return;
+    }
+
+    int threads = Runtime.getRuntime().availableProcessors();
+    ExecutorService readers = Executors.newFixedThreadPool(threads);
+    ExecutorService writers = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(threads * 4),
+        new ThreadPoolExecutor.CallerRunsPolicy());
+
+    List<Future<?>> reads = new ArrayList<>(paths.size());
+    Queue<Future<?>> writes = new ConcurrentLinkedQueue<>();
+
+    try {
+      for (Path path : paths) {
+        reads.add(readers.submit(() -> {
+          Runnable writer = reader.read(path);
+          if (writer != null) {
+            writes.add(writers.submit(writer));
+          }
+          return null;
+        }));
+      }
+
+      for (Future<?> read : reads) {
+        await(read);
+      }
+
+      for (Future<?> write : writes) {
+        await(write);
+      }
+    } finally {
+      readers.shutdownNow();
+      writers.shutdownNow();
+    }
+  }
+
+  private static void await(Future<?> future) throws IOException {
+    try {
+      future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException(e);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof IOException) {
+        throw (IOException) e.getCause();
+      } else if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw new RuntimeException(e.getCause());
+    }
+  }
+
+}
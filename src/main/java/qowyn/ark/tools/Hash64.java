@@ -0,0 +1,154 @@
+package qowyn.ark.tools;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Streaming 64-bit non-cryptographic hash, consumes input in 8 byte blocks.
+ *
+ * Good enough to detect changed content, not meant to withstand deliberate collisions.
+ */
+public class Hash64 {
+
+  private static final long SEED = 0x9E3779B97F4A7C15L;
+
+  private static final long M1 = 0x87C37B91114253D5L;
+
+  private static final long M2 = 0x4CF5AD432745937FL;
+
+  private long state = SEED;
+
+  private long tail;
+
+  private int tailBytes;
+
+  private long length;
+
+  public Hash64 update(byte value) {
+    tail |= (value & 0xFFL) << (tailBytes * Byte.SIZE);
+    length++;
+    if (++tailBytes == Long.BYTES) {
+      mix(tail);
+      tail = 0;
+      tailBytes = 0;
+    }
+    return this;
+  }
+
+  public Hash64 update(byte[] bytes, int offset, int count) {
+    int end = offset + count;
+    int position = offset;
+
+    while (position < end && tailBytes != 0) {
+      update(bytes[position++]);
+    }
+
+    ByteBuffer buffer = ByteBuffer.wrap(bytes, position, end - position).order(ByteOrder.LITTLE_ENDIAN);
+    while (buffer.remaining() >= Long.BYTES) {
+      mix(buffer.getLong());
+      length += Long.BYTES;
+    }
+
+    while (buffer.hasRemaining()) {
+      update(buffer.get());
+    }
+
+    return this;
+  }
+
+  public Hash64 update(byte[] bytes) {
+    return update(bytes, 0, bytes.length);
+  }
+
+  /**
+   * Consumes all remaining bytes of {@code buffer}.
+   */
+  public Hash64 update(ByteBuffer buffer) {
+    ByteBuffer source = buffer.slice().order(ByteOrder.LITTLE_ENDIAN);
+
+    while (source.hasRemaining() && tailBytes != 0) {
+      update(source.get());
+    }
+
+    while (source.remaining() >= Long.BYTES) {
+      mix(source.getLong());
+      length += Long.BYTES;
+    }
+
+    while (source.hasRemaining()) {
+      update(source.get());
+    }
+
+    buffer.position(buffer.limit());
+    return this;
+  }
+
+  public Hash64 update(long value) {
+    if (tailBytes == 0) {
+      mix(value);
+      length += Long.BYTES;
+    } else {
+      for (int i = 0; i < Long.BYTES; i++) {
+        update((byte) (value >>> (i * Byte.SIZE)));
+      }
+    }
+    return this;
+  }
+
+  public Hash64 update(String value) {
+    if (value == null) {
+      return update(-1L);
+    }
+
+    update((long) value.length());
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      update((byte) c);
+      update((byte) (c >>> Byte.SIZE));
+    }
+    return this;
+  }
+
+  private void mix(long block) {
+    block *= M1;
+    block = Long.rotateLeft(block, 31);
+    block *= M2;
+    state ^= block;
+    state = Long.rotateLeft(state, 27) * 5 + 0x52DCE729;
+  }
+
+  /**
+   * @return hash of everything consumed so far, doesn't change the state
+   */
+  public long getValue() {
+    long result = state;
+    if (tailBytes != 0) {
+      long block = tail * M1;
+      block = Long.rotateLeft(block, 31);
+      result ^= block * M2;
+    }
+    result ^= length;
+    return fmix(result);
+  }
+
+  public void reset() {
+    state = SEED;
+    tail = 0;
+    tailBytes = 0;
+    length = 0;
+  }
+
+  private static long fmix(long k) {
+    k ^= k >>> 33;
+    k *= 0xFF51AFD7ED558CCDL;
+    k ^= k >>> 33;
+    k *= 0xC4CEB9FE1A85EC53L;
+    k ^= k >>> 33;
+    return k;
+  }
+
+  public static long hash(byte[] bytes) {
+    return new Hash64().update(bytes).getValue();
+  }
+
+}
@@ -0,0 +1,85 @@
+package qowyn.ark.tools;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Buffers output in memory and hashes it on the fly.
+ *
+ * Used to write files only if their content changed, unchanged files keep their modification time and
+ * readers never see partially written files.
+ */
+public class HashingOutputStream extends ByteArrayOutputStream {
+
+  private final Hash64 hash = new Hash64();
+
+  public HashingOutputStream() {
+    super(8192);
+  }
+
+  @Override
+  public synchronized void write(int b) {
+    super.write(b);
+    hash.update((byte) b);
+  }
+
+  @Override
+  public synchronized void write(byte[] b, int off, int len) {
+    super.write(b, off, len);
+    hash.update(b, off, len);
+  }
+
+  @Override
+  public synchronized void reset() {
+    super.reset();
+    hash.reset();
+  }
+
+  public synchronized long getHash() {
+    return hash.getValue();
+  }
+
+  /**
+   * Replaces {@code path} with the buffered content unless it already has exactly this content.
+   *
+   * @return true if {@code path} has been written
+   */
+  public synchronized boolean writeIfChanged(Path path) throws IOException {
+    if (Files.exists(path) && Files.size(path) == count && hashOf(path) == hash.getValue()) {
+      return false;
+    }
+
+    Path temp = AtomicFiles.createTempSibling(path);
+    try {
+      try (OutputStream out = Files.newOutputStream(temp)) {
+        writeTo(out);
+      }
+
+      AtomicFiles.replace(temp, path);
+    } catch (IOException ex) {
+      Files.deleteIfExists(temp);
+      throw ex;
+    }
+
+    return true;
+  }
+
+  private static long hashOf(Path path) throws IOException {
+    Hash64 fileHash = new Hash64();
+    byte[] buffer = new byte[8192];
+
+    try (InputStream in = Files.newInputStream(path)) {
+      int read;
+      while ((read = in.read(buffer)) != -1) {
+        fileHash.update(buffer, 0, read);
+      }
+    }
+
+    return fileHash.getValue();
+  }
+
+}
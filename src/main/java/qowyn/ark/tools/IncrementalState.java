@@ -0,0 +1,168 @@
+package qowyn.ark.tools;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.json.JsonObject;
+import javax.json.JsonValue;
+
+/**
+ * Remembers size and modification time of processed source files together with the file written for them.
+ *
+ * Sources which didn't change since the last run can be skipped while keeping their output. Entries are keyed
+ * by file name, all sources have to be in the same directory. Safe to use from multiple threads.
+ */
+public class IncrementalState {
+
+  private final Path stateFile;
+
+  private final String settings;
+
+  private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+  /**
+   * Reads {@code stateFile} if it exists. All entries are dropped if it was written with different {@code settings}.
+   */
+  public IncrementalState(Path stateFile, String settings) throws IOException {
+    this.stateFile = stateFile;
+    this.settings = settings;
+
+    if (Files.exists(stateFile)) {
+      JsonObject state = (JsonObject) CommonFunctions.readJson(stateFile.toString());
+      if (settings.equals(state.getString("settings", null))) {
+        for (Map.Entry<String, JsonValue> entry : state.getJsonObject("files").entrySet()) {
+          entries.put(entry.getKey(), new Entry((JsonObject) entry.getValue()));
+        }
+      }
+    }
+  }
+
+  /**
+   * @return true if neither {@code source} nor its dependency changed since it was recorded and its output still exists
+   */
+  public boolean isUpToDate(Path source) throws IOException {
+    Entry entry = entries.get(source.getFileName().toString());
+    if (entry == null) {
+      return false;
+    }
+
+    BasicFileAttributes attributes = Files.readAttributes(source, BasicFileAttributes.class);
+    if (attributes.size() != entry.size || attributes.lastModifiedTime().toMillis() != entry.modified) {
+      return false;
+    }
+
+    if (entry.dependency != null) {
+      Path dependency = source.resolveSibling(entry.dependency);
+      if (!Files.exists(dependency) || Files.getLastModifiedTime(dependency).toMillis() != entry.dependencyModified) {
+        return false;
+      }
+    }
+
+    return Files.exists(stateFile.resolveSibling(entry.output));
+  }
+
+  /**
+   * Records that {@code output} has been written for {@code source}. Removes the previous output if it had another name.
+   *
+   * @param dependency another file in the directory of {@code source} the output depends on, or null
+   */
+  public void record(Path source, Path dependency, Path output) throws IOException {
+    BasicFileAttributes attributes = Files.readAttributes(source, BasicFileAttributes.class);
+
+    Entry entry = new Entry();
+    entry.size = attributes.size();
+    entry.modified = attributes.lastModifiedTime().toMillis();
+    entry.output = output.getFileName().toString();
+
+    if (dependency != null && Files.exists(dependency)) {
+      entry.dependency = dependency.getFileName().toString();
+      entry.dependencyModified = Files.getLastModifiedTime(dependency).toMillis();
+    }
+
+    Entry previous = entries.put(source.getFileName().toString(), entry);
+    if (previous != null && !previous.output.equals(entry.output)) {
+      Files.deleteIfExists(stateFile.resolveSibling(previous.output));
+    }
+  }
+
+  /**
+   * Forgets all sources which don't exist in {@code sourceDirectory} anymore and deletes their output.
+   *
+   * @return number of removed sources
+   */
+  public int removeMissing(Path sourceDirectory) throws IOException {
+    int removed = 0;
+
+    for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+      if (!Files.exists(sourceDirectory.resolve(entry.getKey()))) {
+        try {
+          Files.delete(stateFile.resolveSibling(entry.getValue().output));
+        } catch (NoSuchFileException ex) {
+          // Already gone
+        }
+        entries.remove(entry.getKey());
+        removed++;
+      }
+    }
+
+    return removed;
+  }
+
+  /**
+   * Replaces the state file atomically, an interrupted run leaves the previous state intact.
+   */
+  public void write(OptionHandler oh) throws IOException {
+    CommonFunctions.writeJsonIfChanged(stateFile, generator -> {
+      generator.writeStartObject();
+      generator.write("settings", settings);
+
+      generator.writeStartObject("files");
+      entries.forEach((name, entry) -> {
+        generator.writeStartObject(name);
+        generator.write("size", entry.size);
+        generator.write("modified", entry.modified);
+        generator.write("output", entry.output);
+        if (entry.dependency != null) {
+          generator.write("dependency", entry.dependency);
+          generator.write("dependencyModified", entry.dependencyModified);
+        }
+        generator.writeEnd();
+      });
+      generator.writeEnd();
+
+      generator.writeEnd();
+    }, oh);
+  }
+
+  private static class Entry {
+
+    private long size;
+
+    private long modified;
+
+    private String output;
+
+    private String dependency;
+
+    private long dependencyModified;
+
+    public Entry() {}
+
+    public Entry(JsonObject object) {
+      size = object.getJsonNumber("size").longValue();
+      modified = object.getJsonNumber("modified").longValue();
+      output = object.getString("output");
+      dependency = object.getString("dependency", null);
+      if (dependency != null) {
+        dependencyModified = object.getJsonNumber("dependencyModified").longValue();
+      }
+    }
+
+  }
+
+}
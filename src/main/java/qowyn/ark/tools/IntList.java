@@ -0,0 +1,45 @@
+package qowyn.ark.tools;
+
+import java.util.Arrays;
+
+/**
+ * Growable list of primitive ints.
+ */
+public class IntList {
+
+  private int[] values;
+
+  private int size;
+
+  public IntList() {
+    this(16);
+  }
+
+  public IntList(int initialCapacity) {
+    values = new int[Math.max(1, initialCapacity)];
+  }
+
+  public void add(int value) {
+    if (size == values.length) {
+      values = Arrays.copyOf(values, size << 1);
+    }
+    values[size++] = value;
+  }
+
+  public int get(int index) {
+    return values[index];
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  public int[] toArray() {
+    return Arrays.copyOf(values, size);
+  }
+
+}
@@ -0,0 +1,374 @@
+package qowyn.ark.tools;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+import qowyn.ark.GameObject;
+import qowyn.ark.arrays.ArkArrayStruct;
+import qowyn.ark.structs.Struct;
+import qowyn.ark.structs.StructPropertyList;
+
+/**
+ * Breeding graph of creatures, maps each DinoID to its parent pair.
+ *
+ * Ancestors which are no longer part of the save are still part of the graph as long as
+ * one of their descendants remembers them in DinoAncestors or DinoAncestorsMale.
+ */
+public class LineageIndex {
+
+  private final LongIntHashMap nodeIndex;
+
+  private long[] ids;
+
+  private int[] mothers;
+
+  private int[] fathers;
+
+  private String[] names;
+
+  private GameObject[] creatures;
+
+  private int size;
+
+  private int[] childOffsets;
+
+  private int[] children;
+
+  private int[] generations;
+
+  private LineageIndex(int expectedSize) {
+    nodeIndex = new LongIntHashMap(expectedSize, -1);
+    ids = new long[expectedSize];
+    mothers = new int[expectedSize];
+    fathers = new int[expectedSize];
+    names = new String[expectedSize];
+    creatures = new GameObject[expectedSize];
+  }
+
+  /**
+   * Builds the index in a single pass over {@code creatures}.
+   */
+  public static LineageIndex build(List<GameObject> creatures) {
+    LineageIndex index = new LineageIndex(Math.max(16, creatures.size() * 2));
+
+    for (GameObject creature : creatures) {
+      index.add(creature);
+    }
+
+    index.finish();
+
+    return index;
+  }
+
+  private int nodeFor(long id, String name) {
+    int node = nodeIndex.putIfAbsent(id, size);
+    if (node == size) {
+      if (size == ids.length) {
+        int capacity = size << 1;
+        ids = Arrays.copyOf(ids, capacity);
+        mothers = Arrays.copyOf(mothers, capacity);
+        fathers = Arrays.copyOf(fathers, capacity);
+        names = Arrays.copyOf(names, capacity);
+        creatures = Arrays.copyOf(creatures, capacity);
+      }
+      ids[size] = id;
+      mothers[size] = -1;
+      fathers[size] = -1;
+      size++;
+    }
+
+    if (names[node] == null && name != null && !name.isEmpty()) {
+      names[node] = name;
+    }
+
+    return node;
+  }
+
+  private void add(GameObject creature) {
+    long id = CommonFunctions.getDinoId(creature);
+    if (id == 0) {
+      return;
+    }
+
+    int node = nodeFor(id, creature.getPropertyValue("TamedName", String.class));
+    creatures[node] = creature;
+
+    // The last entry holds the parents of the creature itself, every other entry
+    // holds the parents of the female (male for DinoAncestorsMale) of the next entry
+    addAncestorLine(node, creature.getPropertyValue("DinoAncestors", ArkArrayStruct.class), false);
+    addAncestorLine(node, creature.getPropertyValue("DinoAncestorsMale", ArkArrayStruct.class), true);
+  }
+
+  private void addAncestorLine(int node, ArkArrayStruct ancestors, boolean maleLine) {
+    if (ancestors == null || ancestors.isEmpty()) {
+      return;
+    }
+
+    int child = node;
+    for (int i = ancestors.size() - 1; i >= 0; i--) {
+      Struct struct = ancestors.get(i);
+      if (!(struct instanceof StructPropertyList)) {
+        return;
+      }
+
+      StructPropertyList entry = (StructPropertyList) struct;
+      long maleId = getId(entry, "MaleDinoID1", "MaleDinoID2");
+      long femaleId = getId(entry, "FemaleDinoID1", "FemaleDinoID2");
+
+      int father = maleId != 0 ? nodeFor(maleId, entry.getPropertyValue("MaleName", String.class)) : -1;
+      int mother = femaleId != 0 ? nodeFor(femaleId, entry.getPropertyValue("FemaleName", String.class)) : -1;
+
+      if (child != -1 && mothers[child] == -1 && fathers[child] == -1) {
+        mothers[child] = mother;
+        fathers[child] = father;
+      }
+
+      child = maleLine ? father : mother;
+    }
+  }
+
+  private static long getId(StructPropertyList entry, String name1, String name2) {
+    int id1 = entry.findPropertyValue(name1, Integer.class).orElse(0);
+    int id2 = entry.findPropertyValue(name2, Integer.class).orElse(0);
+    return (long) id1 << Integer.SIZE | (id2 & 0xFFFFFFFFL);
+  }
+
+  private void finish() {
+    childOffsets = new int[size + 1];
+    for (int node = 0; node < size; node++) {
+      if (mothers[node] != -1) {
+        childOffsets[mothers[node] + 1]++;
+      }
+      if (fathers[node] != -1 && fathers[node] != mothers[node]) {
+        childOffsets[fathers[node] + 1]++;
+      }
+    }
+
+    for (int node = 0; node < size; node++) {
+      childOffsets[node + 1] += childOffsets[node];
+    }
+
+    children = new int[childOffsets[size]];
+    int[] fill = Arrays.copyOf(childOffsets, size);
+    for (int node = 0; node < size; node++) {
+      if (mothers[node] != -1) {
+        children[fill[mothers[node]]++] = node;
+      }
+      if (fathers[node] != -1 && fathers[node] != mothers[node]) {
+        children[fill[fathers[node]]++] = node;
+      }
+    }
+
+    computeGenerations();
+  }
+
+  /**
+   * Founders have generation 0, everyone else is one generation after their youngest parent.
+   */
+  private void computeGenerations() {
+    generations = new int[size];
+    Arrays.fill(generations, -1);
+
+    // Iterative post-order walk, corrupt data might contain cycles
+    int[] stack = new int[size];
+    BitSet onStack = new BitSet(size);
+
+    for (int start = 0; start < size; start++) {
+      if (generations[start] != -1) {
+        continue;
+      }
+
+      int top = 0;
+      stack[top++] = start;
+      onStack.set(start);
+
+      while (top > 0) {
+        int node = stack[top - 1];
+        int mother = mothers[node];
+        int father = fathers[node];
+
+        if (mother != -1 && generations[mother] == -1 && !onStack.get(mother)) {
+          stack[top++] = mother;
+          onStack.set(mother);
+          continue;
+        }
+
+        if (father != -1 && generations[father] == -1 && !onStack.get(father)) {
+          stack[top++] = father;
+          onStack.set(father);
+          continue;
+        }
+
+        int motherGeneration = mother != -1 ? generations[mother] : -1;
+        int fatherGeneration = father != -1 ? generations[father] : -1;
+        generations[node] = Math.max(motherGeneration, fatherGeneration) + 1;
+
+        onStack.clear(node);
+        top--;
+      }
+    }
+  }
+
+  public int size() {
+    return size;
+  }
+
+  /**
+   * @return node index of {@code dinoId} or -1 if unknown
+   */
+  public int indexOf(long dinoId) {
+    return nodeIndex.get(dinoId);
+  }
+
+  public long getId(int node) {
+    return ids[node];
+  }
+
+  public String getName(int node) {
+    return names[node];
+  }
+
+  /**
+   * @return the creature or null if the creature is only known as ancestor
+   */
+  public GameObject getCreature(int node) {
+    return creatures[node];
+  }
+
+  public int getGeneration(int node) {
+    return generations[node];
+  }
+
+  public boolean isFounder(int node) {
+    return mothers[node] == -1 && fathers[node] == -1;
+  }
+
+  /**
+   * Visits all ancestors of {@code node}, nearest generation first.
+   */
+  public void forEachAncestor(int node, int maxDepth, NodeVisitor visitor) {
+    BitSet visited = new BitSet(size);
+    int[] queue = new int[size];
+    int[] depths = new int[size];
+    int head = 0;
+    int tail = 0;
+
+    visited.set(node);
+    queue[tail] = node;
+    depths[tail++] = 0;
+
+    while (head < tail) {
+      int current = queue[head];
+      int depth = depths[head++];
+
+      if (depth >= maxDepth) {
+        continue;
+      }
+
+      for (int parent : new int[] {mothers[current], fathers[current]}) {
+        if (parent != -1 && !visited.get(parent)) {
+          visited.set(parent);
+          visitor.visit(parent, depth + 1);
+          queue[tail] = parent;
+          depths[tail++] = depth + 1;
+        }
+      }
+    }
+  }
+
+  /**
+   * Visits all descendants of {@code node}, nearest generation first.
+   */
+  public void forEachDescendant(int node, int maxDepth, NodeVisitor visitor) {
+    BitSet visited = new BitSet(size);
+    int[] queue = new int[size];
+    int[] depths = new int[size];
+    int head = 0;
+    int tail = 0;
+
+    visited.set(node);
+    queue[tail] = node;
+    depths[tail++] = 0;
+
+    while (head < tail) {
+      int current = queue[head];
+      int depth = depths[head++];
+
+      if (depth >= maxDepth) {
+        continue;
+      }
+
+      for (int i = childOffsets[current]; i < childOffsets[current + 1]; i++) {
+        int child = children[i];
+        if (!visited.get(child)) {
+          visited.set(child);
+          visitor.visit(child, depth + 1);
+          queue[tail] = child;
+          depths[tail++] = depth + 1;
+        }
+      }
+    }
+  }
+
+  /**
+   * Visits every founder with at least one descendant together with its number of descendants and the depth of
+   * its furthest descendant.
+   *
+   * All founders share the same buffers, cost grows with the size of the breeding lines instead of
+   * the number of founders times the size of the index.
+   */
+  public void forEachLine(LineVisitor visitor) {
+    // Nodes are marked with the founder which reached them last, no clearing between founders
+    int[] visitedBy = new int[size];
+    int[] queue = new int[size];
+    int[] depths = new int[size];
+
+    for (int founder = 0; founder < size; founder++) {
+      if (!isFounder(founder) || childOffsets[founder] == childOffsets[founder + 1]) {
+        continue;
+      }
+
+      int mark = founder + 1;
+      int head = 0;
+      int tail = 0;
+      int maxDepth = 0;
+
+      visitedBy[founder] = mark;
+      queue[tail] = founder;
+      depths[tail++] = 0;
+
+      while (head < tail) {
+        int current = queue[head];
+        int depth = depths[head++];
+
+        for (int i = childOffsets[current]; i < childOffsets[current + 1]; i++) {
+          int child = children[i];
+          if (visitedBy[child] != mark) {
+            visitedBy[child] = mark;
+            queue[tail] = child;
+            depths[tail++] = depth + 1;
+            maxDepth = Math.max(maxDepth, depth + 1);
+          }
+        }
+      }
+
+      visitor.visit(founder, tail - 1, maxDepth);
+    }
+  }
+
+  @FunctionalInterface
+  public interface NodeVisitor {
+
+    void visit(int node, int depth);
+
+  }
+
+  @FunctionalInterface
+  public interface LineVisitor {
+
+    void visit(int founder, int descendants, int generations);
+
+  }
+
+}
@@ -0,0 +1,169 @@
+package qowyn.ark.tools;
+
+import java.util.Arrays;
+
+/**
+ * Open addressing hash map from primitive {@code long} keys to primitive {@code int} values.
+ * Avoids boxing for 64-bit ids like DinoID and ItemID.
+ */
+public class LongIntHashMap {
+
+  private static final float LOAD_FACTOR = 0.5f;
+
+  private final int missingValue;
+
+  private long[] keys;
+
+  private int[] values;
+
+  private boolean[] used;
+
+  private int mask;
+
+  private int size;
+
+  private int resizeAt;
+
+  public LongIntHashMap() {
+    this(16, -1);
+  }
+
+  /**
+   * @param expectedSize number of entries which can be added without resizing
+   * @param missingValue value returned by {@link #get(long)} for unknown keys
+   */
+  public LongIntHashMap(int expectedSize, int missingValue) {
+    this.missingValue = missingValue;
+    allocate(Integer.highestOneBit(Math.max(4, (int) (expectedSize / LOAD_FACTOR)) - 1) << 1);
+  }
+
+  private void allocate(int capacity) {
+    keys = new long[capacity];
+    values = new int[capacity];
+    used = new boolean[capacity];
+    mask = capacity - 1;
+    resizeAt = (int) (capacity * LOAD_FACTOR);
+  }
+
+  private static int mix(long key) {
+    long h = key * 0x9E3779B97F4A7C15L;
+    return (int) (h ^ (h >>> 32));
+  }
+
+  private int slot(long key) {
+    int slot = mix(key) & mask;
+    while (used[slot] && keys[slot] != key) {
+      slot = (slot + 1) & mask;
+    }
+    return slot;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public boolean containsKey(long key) {
+    return used[slot(key)];
+  }
+
+  public int get(long key) {
+    int slot = slot(key);
+    return used[slot] ? values[slot] : missingValue;
+  }
+
+  /**
+   * @return previous value or missingValue
+   */
+  public int put(long key, int value) {
+    int slot = slot(key);
+    if (used[slot]) {
+      int old = values[slot];
+      values[slot] = value;
+      return old;
+    }
+
+    keys[slot] = key;
+    values[slot] = value;
+    used[slot] = true;
+    if (++size > resizeAt) {
+      rehash();
+    }
+    return missingValue;
+  }
+
+  /**
+   * Returns the value for {@code key}, inserting {@code value} first if {@code key} is unknown.
+   */
+  public int putIfAbsent(long key, int value) {
+    int slot = slot(key);
+    if (used[slot]) {
+      return values[slot];
+    }
+
+    keys[slot] = key;
+    values[slot] = value;
+    used[slot] = true;
+    if (++size > resizeAt) {
+      rehash();
+    }
+    return value;
+  }
+
+  /**
+   * Adds {@code delta} to the value of {@code key}, treating unknown keys as 0.
+   *
+   * @return the new value
+   */
+  public int addTo(long key, int delta) {
+    int slot = slot(key);
+    if (used[slot]) {
+      return values[slot] += delta;
+    }
+
+    keys[slot] = key;
+    values[slot] = delta;
+    used[slot] = true;
+    if (++size > resizeAt) {
+      rehash();
+    }
+    return delta;
+  }
+
+  public void forEach(LongIntConsumer action) {
+    for (int i = 0; i < keys.length; i++) {
+      if (used[i]) {
+        action.accept(keys[i], values[i]);
+      }
+    }
+  }
+
+  public void clear() {
+    Arrays.fill(used, false);
+    size = 0;
+  }
+
+  private void rehash() {
+    long[] oldKeys = keys;
+    int[] oldValues = values;
+    boolean[] oldUsed = used;
+
+    allocate(keys.length << 1);
+
+    for (int i = 0; i < oldKeys.length; i++) {
+      if (oldUsed[i]) {
+        int slot = slot(oldKeys[i]);
+        keys[slot] = oldKeys[i];
+        values[slot] = oldValues[i];
+        used[slot] = true;
+      }
+    }
+  }
+
+  @FunctionalInterface
+  public interface LongIntConsumer {
+
+    void accept(long key, int value);
+
+  }
+
+}
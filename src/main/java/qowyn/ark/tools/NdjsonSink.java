@@ -0,0 +1,69 @@
+package qowyn.ark.tools;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.function.Consumer;
+
+import javax.json.stream.JsonGenerator;
+
+/**
+ * Writes every document as a single line {@code {"name":...,"content":...}} to a stream.
+ *
+ * Pretty printing is ignored, each document has to fit on one line.
+ */
+public class NdjsonSink implements OutputSink {
+
+  private final OutputStream out;
+
+  public NdjsonSink(OutputStream out) {
+    this.out = out;
+  }
+
+  @Override
+  public void write(String name, Consumer<JsonGenerator> writeJson) throws IOException {
+    ByteArrayOutputStream line = new ByteArrayOutputStream(8192);
+    line.write(("{\"name\":" + quote(name) + ",\"content\":").getBytes(StandardCharsets.UTF_8));
+    CommonFunctions.writeJson(line, writeJson, false);
+    line.write('}');
+    line.write('\n');
+
+    synchronized (out) {
+      line.writeTo(out);
+    }
+  }
+
+  /**
+   * Status messages go to stderr if the documents are written to stdout.
+   */
+  @Override
+  public PrintStream console() {
+    return out == System.out ? System.err : System.out;
+  }
+
+  @Override
+  public void close() throws IOException {
+    // Never close stdout
+    out.flush();
+  }
+
+  private static String quote(String value) {
+    StringBuilder sb = new StringBuilder(value.length() + 2);
+    sb.append('"');
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      if (c == '"' || c == '\\') {
+        sb.append('\\').append(c);
+      } else if (c < 0x20) {
+        sb.append(String.format("\\u%04x", (int) c));
+      } else {
+        sb.append(c);
+      }
+    }
+    sb.append('"');
+    return sb.toString();
+  }
+
+}
@@ -2,22 +2,16 @@ package qowyn.ark.tools;
 
 import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Deque;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Predicate;
 
-import qowyn.ark.ArkSavegame;
 import qowyn.ark.GameObject;
 import qowyn.ark.GameObjectContainer;
-import qowyn.ark.PropertyContainer;
-import qowyn.ark.arrays.ArkArray;
-import qowyn.ark.properties.Property;
-import qowyn.ark.properties.PropertyArray;
-import qowyn.ark.properties.PropertyObject;
-import qowyn.ark.properties.PropertyStruct;
-import qowyn.ark.structs.Struct;
 import qowyn.ark.types.ObjectReference;
 
 public class ObjectCollector {
@@ -26,51 +20,41 @@ public class ObjectCollector {
 
   private int insertIndex;
 
-  public ObjectCollector(ArkSavegame saveFile, GameObject baseObject) {
-    Deque<PropertyContainer> toVisit = new ArrayDeque<>();
+  public ObjectCollector(GameObjectContainer saveFile, GameObject baseObject) {
+    this(saveFile, Collections.singletonList(baseObject));
+  }
 
-    mappedObjects.put(baseObject.getId(), baseObject);
-    toVisit.push(baseObject);
+  /**
+   * Collects all base objects and everything they reference
+   */
+  public ObjectCollector(GameObjectContainer saveFile, Collection<GameObject> baseObjects) {
+    this(saveFile, baseObjects, object -> true);
+  }
 
-    while (!toVisit.isEmpty()) {
-      PropertyContainer currentInstance = toVisit.pop();
-
-      for (Property<?> property : currentInstance.getProperties()) {
-        if (property instanceof PropertyObject) {
-          PropertyObject po = (PropertyObject) property;
-          ObjectReference reference = po.getValue();
-          GameObject referenced = reference.getObject(saveFile);
-          if (referenced != null && !mappedObjects.containsKey(referenced.getId())) {
-            mappedObjects.put(referenced.getId(), referenced);
-            toVisit.push(referenced);
-          }
-        } else if (property instanceof PropertyArray) {
-          PropertyArray pa = (PropertyArray) property;
-          ArkArray<Struct> structList = pa.getTypedValue(Struct.class);
-          ArkArray<ObjectReference> objectReferenceList = pa.getTypedValue(ObjectReference.class);
-          if (structList != null) {
-            for (Struct struct : structList) {
-              if (struct instanceof PropertyContainer) {
-                toVisit.push((PropertyContainer) struct);
-              }
-            }
-          } else if (objectReferenceList != null) {
-            for (ObjectReference reference : objectReferenceList) {
-              GameObject referenced = reference.getObject(saveFile);
-              if (referenced != null && !mappedObjects.containsKey(referenced.getId())) {
-                mappedObjects.put(referenced.getId(), referenced);
-                toVisit.push(referenced);
-              }
-            }
-          }
-        } else if (property instanceof PropertyStruct) {
-          PropertyStruct ps = (PropertyStruct) property;
-          Struct struct = ps.getValue();
-          if (struct instanceof PropertyContainer) {
-            toVisit.push((PropertyContainer) struct);
-          }
-        }
+  /**
+   * Collects all base objects and everything they reference as long as it matches {@code include}.
+   * References to objects which haven't been collected are cut on {@link #remap(int)}.
+   */
+  public ObjectCollector(GameObjectContainer saveFile, Collection<GameObject> baseObjects, Predicate<GameObject> include) {
+    Deque<GameObject> toVisit = new ArrayDeque<>();
+
+    for (GameObject baseObject : baseObjects) {
+      if (!mappedObjects.containsKey(baseObject.getId())) {
+        mappedObjects.put(baseObject.getId(), baseObject);
+        toVisit.push(baseObject);
+      }
+    }
+
+    ReferenceWalker.ReferenceVisitor collect = reference -> {
+      GameObject referenced = reference != null ? reference.getObject(saveFile) : null;
+      if (referenced != null && !mappedObjects.containsKey(referenced.getId()) && include.test(referenced)) {
+        mappedObjects.put(referenced.getId(), referenced);
+        toVisit.push(referenced);
       }
+    };
+
+    while (!toVisit.isEmpty()) {
+      ReferenceWalker.walk(toVisit.pop(), collect);
     }
 
     insertIndex = mappedObjects.keySet().stream().max(Integer::compare).orElse(0);
@@ -88,6 +72,14 @@ public class ObjectCollector {
     insertIndex = mappedObjects.size();
   }
 
+  /**
+   * Replaces all collected objects with deep copies, remapping the copies doesn't touch the save.
+   * Needed if multiple collectors of the same save are remapped at the same time.
+   */
+  public void detach() {
+    mappedObjects.replaceAll((id, object) -> new GameObject(object.toJson(true)));
+  }
+
   public Map<Integer, GameObject> getMappedObjects() {
     return Collections.unmodifiableMap(mappedObjects);
   }
@@ -129,44 +121,12 @@ public class ObjectCollector {
   }
 
   protected void doRemap(GameObject instance) {
-    Deque<PropertyContainer> toVisit = new ArrayDeque<>();
-    toVisit.push(instance);
-
-    while (!toVisit.isEmpty()) {
-      PropertyContainer currentInstance = toVisit.pop();
-      for (Property<?> property : currentInstance.getProperties()) {
-        if (property instanceof PropertyObject) {
-          PropertyObject po = (PropertyObject) property;
-          ObjectReference reference = po.getValue();
-          if (reference.getObjectType() == 0 && reference.getObjectId() >= 0) {
-            reference.setObjectId(mappedObjects.get(reference.getObjectId()).getId());
-          }
-        } else if (property instanceof PropertyArray) {
-          PropertyArray pa = (PropertyArray) property;
-          ArkArray<Struct> structList = pa.getTypedValue(Struct.class);
-          ArkArray<ObjectReference> objectReferenceList = pa.getTypedValue(ObjectReference.class);
-          if (structList != null) {
-            for (Struct struct : structList) {
-              if (struct instanceof PropertyContainer) {
-                toVisit.push((PropertyContainer) struct);
-              }
-            }
-          } else if (objectReferenceList != null) {
-            for (ObjectReference reference : objectReferenceList) {
-              if (reference.getObjectType() == 0 && reference.getObjectId() >= 0) {
-                reference.setObjectId(mappedObjects.get(reference.getObjectId()).getId());
-              }
-            }
-          }
-        } else if (property instanceof PropertyStruct) {
-          PropertyStruct ps = (PropertyStruct) property;
-          Struct struct = ps.getValue();
-          if (struct instanceof PropertyContainer) {
-            toVisit.push((PropertyContainer) struct);
-          }
-        }
+    ReferenceWalker.walk(instance, reference -> {
+      if (reference != null && reference.getObjectType() == ObjectReference.TYPE_ID && reference.getObjectId() >= 0) {
+        GameObject referenced = mappedObjects.get(reference.getObjectId());
+        reference.setObjectId(referenced != null ? referenced.getId() : -1);
       }
-    }
+    });
   }
 
 }
@@ -0,0 +1,96 @@
+package qowyn.ark.tools;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import qowyn.ark.GameObject;
+import qowyn.ark.arrays.ArkArray;
+import qowyn.ark.types.ObjectReference;
+
+/**
+ * Removes objects from a list of objects and closes the gaps in the id space.
+ *
+ * References to removed objects are cleared, entries of reference arrays are dropped.
+ */
+public class ObjectCompactor {
+
+  private final int[] newIds;
+
+  private final List<GameObject> remaining;
+
+  private ConcurrentBitSet changed;
+
+  /**
+   * @param objects all objects, id of each object has to match its position
+   * @param keep bit set for each object which should be kept
+   */
+  public ObjectCompactor(List<GameObject> objects, ConcurrentBitSet keep) {
+    newIds = new int[objects.size()];
+    remaining = new ArrayList<>(keep.cardinality());
+
+    for (int index = 0; index < objects.size(); index++) {
+      if (keep.get(index)) {
+        newIds[index] = remaining.size();
+        remaining.add(objects.get(index));
+      } else {
+        newIds[index] = -1;
+      }
+    }
+  }
+
+  public int getRemovedCount() {
+    return newIds.length - remaining.size();
+  }
+
+  /**
+   * @return new id of object with {@code oldId}, -1 if removed
+   */
+  public int getNewId(int oldId) {
+    return oldId >= 0 && oldId < newIds.length ? newIds[oldId] : oldId;
+  }
+
+  /**
+   * Rewrites ids and references of all remaining objects.
+   *
+   * @return remaining objects ordered by their new id
+   */
+  public List<GameObject> compact() {
+    changed = new ConcurrentBitSet(remaining.size());
+
+    remaining.parallelStream().forEach(object -> {
+      int newId = newIds[object.getId()];
+      object.setId(newId);
+      ReferenceWalker.walk(object, new ReferenceWalker.ReferenceVisitor() {
+        @Override
+        public void visit(ObjectReference reference) {
+          if (isIdReference(reference) && newIds[reference.getObjectId()] != reference.getObjectId()) {
+            reference.setObjectId(newIds[reference.getObjectId()]);
+            changed.set(newId);
+          }
+        }
+
+        @Override
+        public void visitArray(ArkArray<ObjectReference> references) {
+          if (references.removeIf(reference -> isIdReference(reference) && newIds[reference.getObjectId()] == -1)) {
+            changed.set(newId);
+          }
+          references.forEach(this::visit);
+        }
+      });
+    });
+
+    return remaining;
+  }
+
+  /**
+   * @return true if {@link #compact()} had to rewrite references of the object with {@code newId}
+   */
+  public boolean isChanged(int newId) {
+    return changed != null && changed.get(newId);
+  }
+
+  private boolean isIdReference(ObjectReference reference) {
+    return reference != null && reference.getObjectType() == ObjectReference.TYPE_ID && reference.getObjectId() >= 0 && reference.getObjectId() < newIds.length;
+  }
+
+}
@@ -0,0 +1,264 @@
+package qowyn.ark.tools;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.stream.IntStream;
+
+import qowyn.ark.GameObject;
+import qowyn.ark.types.ArkName;
+import qowyn.ark.types.ObjectReference;
+
+/**
+ * Reference graph of all objects of a save, stored as compressed adjacency arrays.
+ *
+ * Besides explicit ObjectReferences there are two kinds of implicit edges:
+ * owner to component (names of component minus the first one are the names of the owner)
+ * and inventory to item (OwnerInventory of the item).
+ */
+public class ObjectGraph {
+
+  private static final int BATCH_SIZE = 1024;
+
+  private final List<GameObject> objects;
+
+  private final int[] offsets;
+
+  private final int[] edges;
+
+  private final BitSet roots;
+
+  private ObjectGraph(List<GameObject> objects, int[] offsets, int[] edges, BitSet roots) {
+    this.objects = objects;
+    this.offsets = offsets;
+    this.edges = edges;
+    this.roots = roots;
+  }
+
+  /**
+   * Builds the graph, expects the id of each object to match its position in {@code objects}.
+   */
+  public static ObjectGraph build(List<GameObject> objects) {
+    int size = objects.size();
+
+    int[][] references = new int[size][];
+    IntStream.range(0, size).parallel().forEach(index -> {
+      IntList targets = new IntList();
+      ReferenceWalker.forEachObjectId(objects.get(index), id -> {
+        if (id < size && id != index) {
+          targets.add(id);
+        }
+      });
+      references[index] = targets.toArray();
+    });
+
+    Map<List<ArkName>, Integer> nameMap = new HashMap<>(size * 2);
+    for (int index = 0; index < size; index++) {
+      nameMap.putIfAbsent(objects.get(index).getNames(), index);
+    }
+
+    // Implicit edges, stored as pairs of from and to
+    IntList implicit = new IntList();
+    int[] counts = new int[size];
+    BitSet roots = new BitSet(size);
+    for (int index = 0; index < size; index++) {
+      GameObject object = objects.get(index);
+      counts[index] += references[index].length;
+
+      List<ArkName> names = object.getNames();
+
+      // Top level actors are roots, so are components of actors placed by the map itself which aren't part of the save.
+      // Components of any other missing owner, like inventories of destroyed creatures, are orphans.
+      if (!object.isItem() && (names.size() == 1 || isPlacedByMap(names) && !nameMap.containsKey(names.subList(1, names.size())))) {
+        roots.set(index);
+      }
+
+      // Objects with the names of an earlier object are dropped by the game, don't keep them alive
+      if (nameMap.get(names) != index) {
+        continue;
+      }
+
+      if (names.size() > 1) {
+        Integer owner = nameMap.get(names.subList(1, names.size()));
+        if (owner != null && owner != index) {
+          implicit.add(owner);
+          implicit.add(index);
+          counts[owner]++;
+        }
+      }
+
+      if (object.isItem()) {
+        ObjectReference inventory = object.getPropertyValue("OwnerInventory", ObjectReference.class);
+        if (inventory != null && inventory.getObjectType() == ObjectReference.TYPE_ID && inventory.getObjectId() >= 0 && inventory.getObjectId() < size) {
+          implicit.add(inventory.getObjectId());
+          implicit.add(index);
+          counts[inventory.getObjectId()]++;
+        }
+      }
+    }
+
+    int[] offsets = new int[size + 1];
+    for (int index = 0; index < size; index++) {
+      offsets[index + 1] = offsets[index] + counts[index];
+    }
+
+    int[] edges = new int[offsets[size]];
+    int[] fill = Arrays.copyOf(offsets, size);
+    for (int index = 0; index < size; index++) {
+      System.arraycopy(references[index], 0, edges, fill[index], references[index].length);
+      fill[index] += references[index].length;
+      references[index] = null;
+    }
+
+    for (int i = 0; i < implicit.size(); i += 2) {
+      edges[fill[implicit.get(i)]++] = implicit.get(i + 1);
+    }
+
+    return new ObjectGraph(objects, offsets, edges, roots);
+  }
+
+  public int size() {
+    return objects.size();
+  }
+
+  /**
+   * Actors placed by the map are named after their level, like {@code /Game/Maps/TheIsland:PersistentLevel.Foo_2}.
+   *
+   * @return true if the outermost owner of {@code names} is such an actor
+   */
+  private static boolean isPlacedByMap(List<ArkName> names) {
+    String owner = names.get(names.size() - 1).toString();
+    return owner.startsWith("/") || owner.indexOf(':') != -1 || owner.contains("PersistentLevel");
+  }
+
+  /**
+   * Top level actors and components of map placed actors outside the save are roots, all other components
+   * and items are only alive if something refers to them.
+   */
+  public boolean isRoot(int index) {
+    return roots.get(index);
+  }
+
+  /**
+   * Marks all objects reachable from roots.
+   */
+  public ConcurrentBitSet markReachable() {
+    return markReachable(IntStream.range(0, size()).filter(this::isRoot).toArray());
+  }
+
+  /**
+   * Marks {@code roots} and all objects reachable from them, uses the common ForkJoinPool.
+   */
+  public ConcurrentBitSet markReachable(int[] roots) {
+    return markReachable(roots, null);
+  }
+
+  /**
+   * Marks {@code roots} and all objects reachable from them without passing through objects in {@code blocked}.
+   * Blocked objects are never part of the result.
+   */
+  public ConcurrentBitSet markReachable(int[] roots, ConcurrentBitSet blocked) {
+    ConcurrentBitSet marked = new ConcurrentBitSet(size());
+    if (blocked != null) {
+      for (int index = 0; index < size(); index++) {
+        if (blocked.get(index)) {
+          marked.set(index);
+        }
+      }
+    }
+
+    List<MarkTask> tasks = new ArrayList<>();
+    int[] batch = new int[BATCH_SIZE];
+    int batchSize = 0;
+    for (int root : roots) {
+      if (marked.set(root)) {
+        batch[batchSize++] = root;
+        if (batchSize == BATCH_SIZE) {
+          tasks.add(new MarkTask(marked, batch, batchSize));
+          batch = new int[BATCH_SIZE];
+          batchSize = 0;
+        }
+      }
+    }
+    if (batchSize > 0) {
+      tasks.add(new MarkTask(marked, batch, batchSize));
+    }
+
+    ForkJoinPool.commonPool().invoke(new RecursiveAction() {
+      private static final long serialVersionUID = 1L;
+
+      @Override
+      protected void compute() {
+        invokeAll(tasks);
+      }
+    });
+
+    if (blocked != null) {
+      marked.andNot(blocked);
+    }
+
+    return marked;
+  }
+
+  private class MarkTask extends RecursiveAction {
+
+    private static final long serialVersionUID = 1L;
+
+    private final ConcurrentBitSet marked;
+
+    private final int[] nodes;
+
+    private final int count;
+
+    public MarkTask(ConcurrentBitSet marked, int[] nodes, int count) {
+      this.marked = marked;
+      this.nodes = nodes;
+      this.count = count;
+    }
+
+    @Override
+    protected void compute() {
+      List<MarkTask> forked = new ArrayList<>();
+
+      int[] current = nodes;
+      int currentCount = count;
+
+      // Work on the own frontier, hand off full batches to idle workers
+      while (currentCount > 0) {
+        int[] next = new int[BATCH_SIZE];
+        int nextCount = 0;
+
+        for (int i = 0; i < currentCount; i++) {
+          int node = current[i];
+          for (int edge = offsets[node]; edge < offsets[node + 1]; edge++) {
+            int target = edges[edge];
+            if (marked.set(target)) {
+              next[nextCount++] = target;
+              if (nextCount == BATCH_SIZE) {
+                MarkTask task = new MarkTask(marked, next, nextCount);
+                task.fork();
+                forked.add(task);
+                next = new int[BATCH_SIZE];
+                nextCount = 0;
+              }
+            }
+          }
+        }
+
+        current = next;
+        currentCount = nextCount;
+      }
+
+      for (MarkTask task : forked) {
+        task.join();
+      }
+    }
+
+  }
+
+}
@@ -0,0 +1,146 @@
+package qowyn.ark.tools;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import java.util.List;
+
+import qowyn.ark.ArkArchive;
+import qowyn.ark.GameObject;
+import qowyn.ark.GameObjectContainer;
+import qowyn.ark.PropertyContainer;
+import qowyn.ark.arrays.ArkArray;
+import qowyn.ark.properties.Property;
+import qowyn.ark.properties.PropertyArray;
+import qowyn.ark.properties.PropertyObject;
+import qowyn.ark.properties.PropertyStruct;
+import qowyn.ark.structs.Struct;
+import qowyn.ark.types.ArkName;
+import qowyn.ark.types.LocationData;
+import qowyn.ark.types.ObjectReference;
+
+/**
+ * Computes content hashes of GameObjects from their binary property serialization.
+ *
+ * References are hashed by the names of the referenced object instead of its id, ids are positions in the
+ * save and shift whenever an object is added or removed before them.
+ *
+ * Every thread reuses its own buffer, only one object is serialized at a time.
+ */
+public class ObjectHasher {
+
+  private static final int INITIAL_BUFFER_SIZE = 64 * 1024;
+
+  private static final ThreadLocal<ByteBuffer> BUFFER = ThreadLocal.withInitial(() -> ByteBuffer.allocate(INITIAL_BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN));
+
+  private static final ThreadLocal<Hash64> HASH = ThreadLocal.withInitial(Hash64::new);
+
+  /**
+   * Hashes class, location and properties of {@code object}.
+   *
+   * @param container used to resolve references by id
+   */
+  public static long hash(GameObject object, GameObjectContainer container) {
+    Hash64 hash = HASH.get();
+    hash.reset();
+
+    hash.update(object.getClassString());
+
+    LocationData location = object.getLocation();
+    if (location != null) {
+      hash.update((long) Float.floatToIntBits(location.getX()) << Integer.SIZE | Float.floatToIntBits(location.getY()) & 0xFFFFFFFFL);
+      hash.update((long) Float.floatToIntBits(location.getZ()) << Integer.SIZE | Float.floatToIntBits(location.getPitch()) & 0xFFFFFFFFL);
+      hash.update((long) Float.floatToIntBits(location.getYaw()) << Integer.SIZE | Float.floatToIntBits(location.getRoll()) & 0xFFFFFFFFL);
+    }
+
+    if (object.getProperties() != null) {
+      hashProperties(hash, object.getProperties(), container);
+    }
+
+    return hash.getValue();
+  }
+
+  private static void hashProperties(Hash64 hash, List<Property<?>> properties, GameObjectContainer container) {
+    for (Property<?> property : properties) {
+      if (property instanceof PropertyObject) {
+        hashHeader(hash, property);
+        hashReference(hash, ((PropertyObject) property).getValue(), container);
+      } else if (property instanceof PropertyArray) {
+        PropertyArray pa = (PropertyArray) property;
+        ArkArray<ObjectReference> objectReferenceList = pa.getTypedValue(ObjectReference.class);
+        ArkArray<Struct> structList = pa.getTypedValue(Struct.class);
+        if (objectReferenceList != null) {
+          hashHeader(hash, property);
+          hash.update((long) objectReferenceList.size());
+          for (ObjectReference reference : objectReferenceList) {
+            hashReference(hash, reference, container);
+          }
+        } else if (structList != null && !structList.isEmpty() && structList.get(0) instanceof PropertyContainer) {
+          hashHeader(hash, property);
+          hash.update((long) structList.size());
+          for (Struct struct : structList) {
+            hashProperties(hash, ((PropertyContainer) struct).getProperties(), container);
+          }
+        } else {
+          hash.update(serialize(property));
+        }
+      } else if (property instanceof PropertyStruct && ((PropertyStruct) property).getValue() instanceof PropertyContainer) {
+        hashHeader(hash, property);
+        hashProperties(hash, ((PropertyContainer) ((PropertyStruct) property).getValue()).getProperties(), container);
+      } else {
+        // Can't contain references
+        hash.update(serialize(property));
+      }
+    }
+
+    // Separates nested property lists from following properties
+    hash.update(-1L);
+  }
+
+  private static void hashHeader(Hash64 hash, Property<?> property) {
+    hash.update(property.getNameString());
+    hash.update(property.getType().toString());
+    hash.update((long) property.getIndex());
+  }
+
+  private static void hashReference(Hash64 hash, ObjectReference reference, GameObjectContainer container) {
+    if (reference == null) {
+      hash.update(-1L);
+    } else if (reference.getObjectType() == ObjectReference.TYPE_ID) {
+      GameObject target = reference.getObjectId() >= 0 ? container.getObject(reference) : null;
+      if (target != null) {
+        hash.update((long) target.getNames().size());
+        for (ArkName name : target.getNames()) {
+          hash.update(name.toString());
+        }
+      } else {
+        // Dangling reference, nothing more stable than the id available
+        hash.update(-2L);
+        hash.update((long) reference.getObjectId());
+      }
+    } else {
+      hash.update(-3L);
+      hash.update(reference.getObjectString() != null ? reference.getObjectString().toString() : null);
+    }
+  }
+
+  /**
+   * @return buffer positioned at the start of the serialized property, only valid until the next call on this thread
+   */
+  private static ByteBuffer serialize(Property<?> property) {
+    int size = property.calculateSize(false);
+
+    ByteBuffer buffer = BUFFER.get();
+    if (buffer.capacity() < size) {
+      buffer = ByteBuffer.allocate(Integer.highestOneBit(size) << 1).order(ByteOrder.LITTLE_ENDIAN);
+      BUFFER.set(buffer);
+    }
+
+    buffer.clear();
+    property.writeBinary(new ArkArchive(buffer));
+    buffer.position(0).limit(size);
+
+    return buffer;
+  }
+
+}
@@ -0,0 +1,75 @@
+package qowyn.ark.tools;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.function.Consumer;
+
+import javax.json.stream.JsonGenerator;
+
+import joptsimple.OptionSpec;
+
+/**
+ * Destination for commands writing one JSON document per class, player, tribe or cluster file.
+ *
+ * Implementations have to accept writes from multiple threads. Documents are identified by file names
+ * like {@code 1234.json}, the sink decides how they are stored.
+ */
+public interface OutputSink extends Closeable {
+
+  /**
+   * Writes document {@code name}, replacing a previous document of the same name where supported.
+   */
+  void write(String name, Consumer<JsonGenerator> writeJson) throws IOException;
+
+  /**
+   * Publishes everything written so far, to be called once all documents have been written successfully.
+   * Sinks which can't publish atomically write right away and do nothing here.
+   */
+  default void commit() throws IOException {}
+
+  /**
+   * Removes document {@code name} if it exists. Only supported by sinks returning a directory.
+   */
+  default void delete(String name) throws IOException {
+    throw new UnsupportedOperationException("Can't delete " + name + " from " + getClass().getSimpleName());
+  }
+
+  /**
+   * @return directory containing the documents or null if they don't end up as separate files
+   */
+  default Path getDirectory() {
+    return null;
+  }
+
+  /**
+   * @return stream for status messages, never mixes with the written documents
+   */
+  default PrintStream console() {
+    return System.out;
+  }
+
+  static OptionSpec<String> accepts(OptionHandler oh) {
+    return oh.accepts("output-format", "Where to write the output: files in DIRECTORY, a single zip file named DIRECTORY, "
+        + "the same uncompressed (store) or one document per line on stdout (ndjson, DIRECTORY is ignored).")
+        .withRequiredArg().describedAs("dir|zip|store|ndjson").defaultsTo("dir");
+  }
+
+  static OutputSink open(String format, String target, OptionHandler oh) throws IOException {
+    switch (format) {
+      case "dir":
+        return new DirectorySink(Paths.get(target).toAbsolutePath(), oh);
+      case "zip":
+        return new ZipSink(Paths.get(target).toAbsolutePath(), true, oh);
+      case "store":
+        return new ZipSink(Paths.get(target).toAbsolutePath(), false, oh);
+      case "ndjson":
+        return new NdjsonSink(System.out);
+      default:
+        throw new IllegalArgumentException("Unknown output format " + format);
+    }
+  }
+
+}
@@ -3,34 +3,43 @@ package qowyn.ark.tools;
 import static java.util.Comparator.comparing;
 import static java.util.Comparator.reverseOrder;
 
+import java.io.BufferedWriter;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.DirectoryStream;
 import java.nio.file.DirectoryStream.Filter;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.nio.file.attribute.FileTime;
 import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
 import java.util.function.BiConsumer;
 import java.util.function.Consumer;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+import javax.json.Json;
+import javax.json.JsonObject;
+import javax.json.JsonValue;
 import javax.json.stream.JsonGenerator;
 
 import joptsimple.OptionSet;
 import joptsimple.OptionSpec;
 import qowyn.ark.ArkCloudInventory;
-import qowyn.ark.ArkContainer;
-import qowyn.ark.ArkProfile;
 import qowyn.ark.ArkSavegame;
-import qowyn.ark.ArkTribe;
 import qowyn.ark.GameObject;
 import qowyn.ark.PropertyContainer;
 import qowyn.ark.arrays.ArkArrayInt;
@@ -56,6 +65,18 @@ public class PlayerListCommands {
 
   private static final Pattern TRIBE_PATTERN = Pattern.compile("\\d+\\.arktribe");
 
+  /**
+   * Fields of MyData read by players
+   */
+  private static final Set<String> PROFILE_PROPERTIES = new HashSet<>(Arrays.asList("PlayerDataID", "UniqueID", "PlayerName", "SavedNetworkAddress", "TribeID",
+      "MyPlayerCharacterConfig", "MyPersistentCharacterStats"));
+
+  /**
+   * Fields of TribeData read by players and tribes
+   */
+  private static final Set<String> TRIBE_PROPERTIES = new HashSet<>(Arrays.asList("TribeID", "TribeName", "OwnerPlayerDataID", "MembersPlayerName", "MembersPlayerDataID",
+      "TribeAdmins", "TribeLog"));
+
   private static final Pattern BASE_PATTERN = Pattern.compile("\\s*Base:\\s*(.+)\\s*<br>Size:\\s*(\\d+)\\s*", Pattern.CASE_INSENSITIVE);
 
   public static void players(OptionHandler oh) {
@@ -65,6 +86,9 @@ public class PlayerListCommands {
     OptionSpec<String> inventorySpec = oh.accepts("inventory", "Include inventory of players.").withOptionalArg().describedAs("summary|long").defaultsTo("summary");
     OptionSpec<Void> positionsSpec = oh.accepts("positions", "Include current position of players.");
     OptionSpec<Integer> maxAgeSpec = oh.accepts("max-age", "Ignore all player files older then <seconds> seconds.").withRequiredArg().describedAs("seconds").ofType(Integer.class);
+    OptionSpec<Void> incrementalSpec = oh.accepts("incremental", "Only parse profiles which changed since the last run, keeps the output of unchanged profiles.");
+    OptionSpec<Void> watchSpec = oh.accepts("watch", "Keep running and update the output whenever profiles, tribes or the map change. Implies --incremental.");
+    OptionSpec<String> outputFormatSpec = OutputSink.accepts(oh);
 
     OptionSet options = oh.reparse();
 
@@ -77,52 +101,89 @@ public class PlayerListCommands {
       return;
     }
 
+    if ((options.has(incrementalSpec) || options.has(watchSpec)) && !options.valueOf(outputFormatSpec).equals("dir")) {
+      System.err.println("--incremental and --watch need --output-format dir");
+      System.exit(1);
+      return;
+    }
+
     boolean inventoryLong = options.valueOf(inventorySpec).equals("long");
 
     DataManager.loadData(oh.lang());
 
-    try {
-      Stopwatch stopwatch = new Stopwatch(oh.useStopwatch());
-
+    try (OutputSink sink = OutputSink.open(options.valueOf(outputFormatSpec), params.get(1), oh)) {
       boolean mapNeeded = options.has(inventorySpec) || options.has(positionsSpec);
       if (!oh.isQuiet() && mapNeeded) {
-        System.out.println("Need to load map, this may take some time...");
+        sink.console().println("Need to load map, this may take some time...");
       }
 
       Path saveGame = Paths.get(params.get(0)).toAbsolutePath();
-      Path outputDirectory = Paths.get(params.get(1)).toAbsolutePath();
       Path saveDir = saveGame.getParent();
 
-      final ArkSavegame save;
-      final LatLonCalculator latLonCalculator;
-
-      if (mapNeeded) {
-        save = new ArkSavegame(saveGame.toString(), oh.readingOptions());
-        latLonCalculator = LatLonCalculator.forSave(save);
-        stopwatch.stop("Loading map data");
-      } else {
-        save = null;
-        latLonCalculator = null;
+      SaveWatcher watcher = null;
+      if (options.has(watchSpec)) {
+        watcher = new SaveWatcher(saveDir, path -> PROFILE_PATTERN.matcher(path.getFileName().toString()).matches()
+            || TRIBE_PATTERN.matcher(path.getFileName().toString()).matches() || mapNeeded && path.equals(saveGame));
       }
 
-      Map<Integer, StructPropertyList> tribes = new HashMap<>();
+      ArkSavegame loadedSave = null;
+      Set<Path> changed = null;
 
-      Filter<Path> profileFilter = path -> PROFILE_PATTERN.matcher(path.getFileName().toString()).matches();
+      do {
+        Stopwatch stopwatch = new Stopwatch(oh.useStopwatch());
 
-      try (DirectoryStream<Path> stream = Files.newDirectoryStream(saveDir, profileFilter)) {
-        for (Path path : stream) {
+        final ArkSavegame save;
+        final LatLonCalculator latLonCalculator;
+
+        if (mapNeeded) {
+          // When watching the map is only read again if it changed
+          if (loadedSave == null || changed.contains(saveGame)) {
+            loadedSave = new ArkSavegame(saveGame.toString(), oh.readingOptions());
+            stopwatch.stop("Loading map data");
+          }
+          save = loadedSave;
+          latLonCalculator = LatLonCalculator.forSave(save);
+        } else {
+          save = null;
+          latLonCalculator = null;
+        }
+
+        // Watching only regenerates the output of changed profiles
+        final IncrementalState state;
+        if (options.has(incrementalSpec) || watcher != null) {
+          // Output depends on these, any change invalidates all entries
+          String settings = String.join(" ", naming, Boolean.toString(options.has(noPrivacySpec)), options.has(inventorySpec) ? options.valueOf(inventorySpec) : "",
+              Boolean.toString(options.has(positionsSpec)), mapNeeded ? Long.toString(Files.getLastModifiedTime(saveGame).toMillis()) : "");
+          state = new IncrementalState(sink.getDirectory().resolve("players.state"), settings);
+        } else {
+          state = null;
+        }
+
+        // Every tribe file is read at most once, even if its members are parsed at the same time
+        Map<Integer, Optional<StructPropertyList>> tribes = new ConcurrentHashMap<>();
+
+        Filter<Path> profileFilter = path -> PROFILE_PATTERN.matcher(path.getFileName().toString()).matches();
+
+        List<Path> profilePaths = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(saveDir, profileFilter)) {
+          stream.forEach(profilePaths::add);
+        }
+
+        FilePipeline.run(profilePaths, oh.useParallel(), path -> {
           if (options.has(maxAgeSpec)) {
             FileTime fileTime = Files.getLastModifiedTime(path);
 
             if (fileTime.toInstant().isBefore(Instant.now().minusSeconds(maxAgeSpec.value(options)))) {
-              continue;
+              return null;
             }
           }
 
-          try {
-            ArkProfile profile = new ArkProfile(path.toString());
+          if (state != null && state.isUpToDate(path)) {
+            return null;
+          }
 
-            StructPropertyList myData = profile.getPropertyValue("MyData", StructPropertyList.class);
+          try {
+            StructPropertyList myData = SelectiveReader.readProfile(path, PROFILE_PROPERTIES);
 
             long playerId = myData.getPropertyValue("PlayerDataID", Number.class).longValue();
 
@@ -136,168 +197,191 @@ public class PlayerListCommands {
             }
 
             Number tribeId = myData.getPropertyValue("TribeID", Number.class);
-            if (tribeId != null && !tribes.containsKey(tribeId.intValue())) {
-              Path tribePath = saveDir.resolve(tribeId.intValue() + ".arktribe");
+            StructPropertyList tribe = tribeId == null ? null : tribes.computeIfAbsent(tribeId.intValue(), key -> {
+              Path tribePath = saveDir.resolve(key + ".arktribe");
               if (Files.exists(tribePath)) {
                 try {
-                  ArkTribe tribe = new ArkTribe(tribePath.toString());
-                  StructPropertyList tribeData = tribe.getPropertyValue("TribeData", StructPropertyList.class);
-                  tribes.put(tribeId.intValue(), tribeData);
+                  return Optional.ofNullable(SelectiveReader.readTribe(tribePath, TRIBE_PROPERTIES));
+                } catch (IOException e) {
+                  throw new RuntimeException(e);
                 } catch (RuntimeException ex) {
                   // Either the header didn't match or one of the properties is missing
                   System.err.println("Found potentially corrupt ArkTribe: " + tribePath);
                   if (oh.isVerbose()) {
                     ex.printStackTrace();
                   }
-                  tribes.put(tribeId.intValue(), null);
                 }
-              } else {
-                tribes.put(tribeId.intValue(), null);
               }
-            }
+              return Optional.empty();
+            }).orElse(null);
 
-            Path playerPath = outputDirectory.resolve(playerFileName);
+            return () -> {
+              try {
+                sink.write(playerFileName, generator -> {
+                  generator.writeStartObject();
 
-            CommonFunctions.writeJson(playerPath.toString(), generator -> {
-              generator.writeStartObject();
+                  // Player data
 
-              // Player data
+                  generator.write("id", playerId);
+                  generator.write("playerName", myData.getPropertyValue("PlayerName", String.class));
 
-              generator.write("id", playerId);
-              generator.write("playerName", myData.getPropertyValue("PlayerName", String.class));
+                  if (options.has(noPrivacySpec)) {
+                    generator.write("steamId", myData.getPropertyValue("UniqueID", StructUniqueNetIdRepl.class).getNetId());
+                    generator.write("lastIp", myData.getPropertyValue("SavedNetworkAddress", String.class));
+                  }
 
-              if (options.has(noPrivacySpec)) {
-                generator.write("steamId", myData.getPropertyValue("UniqueID", StructUniqueNetIdRepl.class).getNetId());
-                generator.write("lastIp", myData.getPropertyValue("SavedNetworkAddress", String.class));
-              }
+                  StructPropertyList characterConfig = myData.getPropertyValue("MyPlayerCharacterConfig", StructPropertyList.class);
+                  StructPropertyList characterStats = myData.getPropertyValue("MyPersistentCharacterStats", StructPropertyList.class);
 
-              StructPropertyList characterConfig = myData.getPropertyValue("MyPlayerCharacterConfig", StructPropertyList.class);
-              StructPropertyList characterStats = myData.getPropertyValue("MyPersistentCharacterStats", StructPropertyList.class);
+                  // Character data
 
-              // Character data
+                  generator.write("name", characterConfig.getPropertyValue("PlayerCharacterName", String.class));
+                  Number extraLevel = characterStats.getPropertyValue("CharacterStatusComponent_ExtraCharacterLevel", Number.class);
+                  generator.write("level", extraLevel != null ? extraLevel.intValue() + 1 : 1);
+                  generator.write("experience", characterStats.getPropertyValue("CharacterStatusComponent_ExperiencePoints", Number.class).floatValue());
 
-              generator.write("name", characterConfig.getPropertyValue("PlayerCharacterName", String.class));
-              Number extraLevel = characterStats.getPropertyValue("CharacterStatusComponent_ExtraCharacterLevel", Number.class);
-              generator.write("level", extraLevel != null ? extraLevel.intValue() + 1 : 1);
-              generator.write("experience", characterStats.getPropertyValue("CharacterStatusComponent_ExperiencePoints", Number.class).floatValue());
+                  // Engrams
 
-              // Engrams
+                  List<ObjectReference> learnedEngrams = characterStats.getPropertyValue("PlayerState_EngramBlueprints", ArkArrayObjectReference.class);
 
-              List<ObjectReference> learnedEngrams = characterStats.getPropertyValue("PlayerState_EngramBlueprints", ArkArrayObjectReference.class);
+                  if (learnedEngrams != null && !learnedEngrams.isEmpty()) {
+                    generator.writeStartArray("engrams");
+                    for (ObjectReference reference : learnedEngrams) {
+                      String engram = reference.getObjectString().toString();
 
-              if (learnedEngrams != null && !learnedEngrams.isEmpty()) {
-                generator.writeStartArray("engrams");
-                for (ObjectReference reference : learnedEngrams) {
-                  String engram = reference.getObjectString().toString();
+                      if (DataManager.hasItemByBGC(engram)) {
+                        engram = DataManager.getItemByBGC(engram).getName();
+                      }
 
-                  if (DataManager.hasItemByBGC(engram)) {
-                    engram = DataManager.getItemByBGC(engram).getName();
+                      generator.write(engram);
+                    }
+                    generator.writeEnd();
                   }
 
-                  generator.write(engram);
-                }
-                generator.writeEnd();
-              }
-
-              // Attributes
+                  // Attributes
 
-              generator.writeStartObject("attributes");
-              for (Property<?> property : characterStats.getProperties()) {
-                if (property instanceof PropertyByte && property.getNameString().equals("CharacterStatusComponent_NumberOfLevelUpPointsApplied")) {
-                  PropertyByte attribute = (PropertyByte) property;
+                  generator.writeStartObject("attributes");
+                  for (Property<?> property : characterStats.getProperties()) {
+                    if (property instanceof PropertyByte && property.getNameString().equals("CharacterStatusComponent_NumberOfLevelUpPointsApplied")) {
+                      PropertyByte attribute = (PropertyByte) property;
 
-                  String name = AttributeNames.get(attribute.getIndex());
-                  if (name == null) {
-                    generator.write(Integer.toString(attribute.getIndex()), attribute.getValue().getByteValue());
-                  } else {
-                    generator.write(name, attribute.getValue().getByteValue());
+                      String name = AttributeNames.get(attribute.getIndex());
+                      if (name == null) {
+                        generator.write(Integer.toString(attribute.getIndex()), attribute.getValue().getByteValue());
+                      } else {
+                        generator.write(name, attribute.getValue().getByteValue());
+                      }
+                    }
                   }
-                }
-              }
-              generator.writeEnd();
+                  generator.writeEnd();
 
-              // Inventory
+                  // Inventory
 
-              GameObject player = null;
-              if (options.has(inventorySpec) || options.has(positionsSpec)) {
-                for (GameObject object : save.getObjects()) {
-                  Long playerDataId = object.getPropertyValue("LinkedPlayerDataID", Long.class);
-                  if (playerDataId != null && playerDataId == playerId) {
-                    player = object;
-                    break;
+                  GameObject player = null;
+                  if (options.has(inventorySpec) || options.has(positionsSpec)) {
+                    for (GameObject object : save.getObjects()) {
+                      Long playerDataId = object.getPropertyValue("LinkedPlayerDataID", Long.class);
+                      if (playerDataId != null && playerDataId == playerId) {
+                        player = object;
+                        break;
+                      }
+                    }
                   }
-                }
-              }
 
-              if (options.has(inventorySpec) && player != null) {
-                ObjectReference inventoryReference = player.getPropertyValue("MyInventoryComponent", ObjectReference.class);
-                GameObject inventory = save.getObject(inventoryReference);
-
-                if (inventory != null) {
-                  List<ArkItem> items = new ArrayList<>();
-                  ArkArrayObjectReference itemList = inventory.getPropertyValue("InventoryItems", ArkArrayObjectReference.class);
-                  for (ObjectReference itemReference : itemList) {
-                    GameObject item = save.getObject(itemReference);
-                    if (item != null) {
-                      boolean isEngram = item.findPropertyValue("bIsEngram", Boolean.class).orElse(false);
-                      boolean isHidden = item.findPropertyValue("bHideFromInventoryDisplay", Boolean.class).orElse(false);
-                      if (isEngram || isHidden) {
-                        continue;
+                  if (options.has(inventorySpec) && player != null) {
+                    ObjectReference inventoryReference = player.getPropertyValue("MyInventoryComponent", ObjectReference.class);
+                    GameObject inventory = save.getObject(inventoryReference);
+
+                    if (inventory != null) {
+                      List<ArkItem> items = new ArrayList<>();
+                      ArkArrayObjectReference itemList = inventory.getPropertyValue("InventoryItems", ArkArrayObjectReference.class);
+                      for (ObjectReference itemReference : itemList) {
+                        GameObject item = save.getObject(itemReference);
+                        if (item != null) {
+                          boolean isEngram = item.findPropertyValue("bIsEngram", Boolean.class).orElse(false);
+                          boolean isHidden = item.findPropertyValue("bHideFromInventoryDisplay", Boolean.class).orElse(false);
+                          if (isEngram || isHidden) {
+                            continue;
+                          }
+
+                          items.add(new ArkItem(item));
+                        }
                       }
 
-                      items.add(new ArkItem(item));
+                      if (inventoryLong) {
+                        SharedWriters.writeInventoryLong(generator, items, "inventory");
+                      } else {
+                        SharedWriters.writeInventorySummary(generator, items, "inventory");
+                      }
                     }
                   }
 
-                  if (inventoryLong) {
-                    SharedWriters.writeInventoryLong(generator, items, "inventory");
-                  } else {
-                    SharedWriters.writeInventorySummary(generator, items, "inventory");
+                  if (options.has(positionsSpec) && player != null && player.getLocation() != null) {
+                    generator.write("x", player.getLocation().getX());
+                    generator.write("y", player.getLocation().getY());
+                    generator.write("z", player.getLocation().getZ());
+                    generator.write("lat", latLonCalculator.calculateLat(player.getLocation().getY()));
+                    generator.write("lon", latLonCalculator.calculateLon(player.getLocation().getX()));
                   }
-                }
-              }
 
-              if (options.has(positionsSpec) && player != null && player.getLocation() != null) {
-                generator.write("x", player.getLocation().getX());
-                generator.write("y", player.getLocation().getY());
-                generator.write("z", player.getLocation().getZ());
-                generator.write("lat", latLonCalculator.calculateLat(player.getLocation().getY()));
-                generator.write("lon", latLonCalculator.calculateLon(player.getLocation().getX()));
-              }
+                  // Tribe
 
-              // Tribe
+                  if (tribeId != null) {
+                    generator.write("tribeId", tribeId.intValue());
+                    if (tribe != null) {
+                      generator.write("tribeName", tribe.getPropertyValue("TribeName", String.class));
 
-              if (tribeId != null) {
-                generator.write("tribeId", tribeId.intValue());
-                StructPropertyList tribe = tribes.get(tribeId.intValue());
-                if (tribe != null) {
-                  generator.write("tribeName", tribe.getPropertyValue("TribeName", String.class));
+                      Number tribeOwnerId = tribe.getPropertyValue("OwnerPlayerDataID", Number.class);
+                      if (tribeOwnerId != null && tribeOwnerId.intValue() == playerId) {
+                        generator.write("tribeOwner", true);
+                      }
 
-                  Number tribeOwnerId = tribe.getPropertyValue("OwnerPlayerDataID", Number.class);
-                  if (tribeOwnerId != null && tribeOwnerId.intValue() == playerId) {
-                    generator.write("tribeOwner", true);
+                      List<Integer> tribeAdmins = tribe.getPropertyValue("TribeAdmins", ArkArrayInt.class);
+                      if (tribeAdmins != null && tribeAdmins.contains(playerId)) {
+                        generator.write("tribeAdmin", true);
+                      }
+                    }
                   }
 
-                  List<Integer> tribeAdmins = tribe.getPropertyValue("TribeAdmins", ArkArrayInt.class);
-                  if (tribeAdmins != null && tribeAdmins.contains(playerId)) {
-                    generator.write("tribeAdmin", true);
-                  }
+                  generator.writeEnd();
+                });
+
+                if (state != null) {
+                  state.record(path, tribeId != null ? saveDir.resolve(tribeId.intValue() + ".arktribe") : null, sink.getDirectory().resolve(playerFileName));
+                }
+              } catch (IOException e) {
+                throw new RuntimeException(e);
+              } catch (RuntimeException ex) {
+                System.err.println("Found potentially corrupt ArkProfile: " + path.toString());
+                if (oh.isVerbose()) {
+                  ex.printStackTrace();
                 }
               }
-
-              generator.writeEnd();
-            }, oh);
+            };
           } catch (RuntimeException ex) {
             System.err.println("Found potentially corrupt ArkProfile: " + path.toString());
             if (oh.isVerbose()) {
               ex.printStackTrace();
             }
+            return null;
+          }
+        });
+
+        stopwatch.stop("Loading profiles and writing info");
+
+        if (state != null) {
+          int removed = state.removeMissing(saveDir);
+          state.write(oh);
+          if (oh.isVerbose() && removed > 0) {
+            sink.console().println("Removed output of " + removed + " deleted profiles.");
           }
+          stopwatch.stop("Updating state");
         }
-      }
 
-      stopwatch.stop("Loading profiles and writing info");
-      stopwatch.print();
+        stopwatch.print();
+      } while (watcher != null && (changed = watcher.awaitChanges()) != null);
+
+      sink.commit();
     } catch (IOException e) {
       throw new RuntimeException(e);
     }
@@ -310,6 +394,8 @@ public class PlayerListCommands {
     OptionSpec<Void> structuresSpec = oh.accepts("structures", "Include a list of all structures belonging to the tribe.");
     OptionSpec<Void> basesSpec = oh.accepts("bases", "Allows tribes to create 'bases', groups creatures etc by base.");
     OptionSpec<Void> tribelessSpec = oh.accepts("tribeless", "Put all players without a tribe into the 'tribeless' tribe.");
+    OptionSpec<Void> watchSpec = oh.accepts("watch", "Keep running and write tribes again whenever their file or the map changes.");
+    OptionSpec<String> outputFormatSpec = OutputSink.accepts(oh);
 
     OptionSet options = oh.reparse();
 
@@ -320,310 +406,348 @@ public class PlayerListCommands {
       return;
     }
 
-    boolean itemsLong = options.valueOf(itemsSpec).equals("long");
+    if (options.has(watchSpec) && !options.valueOf(outputFormatSpec).equals("dir")) {
+      System.err.println("--watch needs --output-format dir");
+      System.exit(1);
+      return;
+    }
 
-    try {
-      Stopwatch stopwatch = new Stopwatch(oh.useStopwatch());
+    boolean itemsLong = options.valueOf(itemsSpec).equals("long");
 
+    try (OutputSink sink = OutputSink.open(options.valueOf(outputFormatSpec), params.get(1), oh)) {
       boolean mapNeeded = options.has(itemsSpec) || options.has(tamedSpec) || options.has(structuresSpec);
       if (!oh.isQuiet() && mapNeeded) {
-        System.out.println("Need to load map, this may take some time...");
+        sink.console().println("Need to load map, this may take some time...");
       }
 
       Path saveGame = Paths.get(params.get(0)).toAbsolutePath();
-      Path outputDirectory = Paths.get(params.get(1)).toAbsolutePath();
       Path saveDir = saveGame.getParent();
 
-      final ArkSavegame save;
-      final Map<Integer, Set<TribeBase>> baseMap;
-      final LatLonCalculator latLonCalculator;
-
       if (mapNeeded) {
         DataManager.loadData(oh.lang());
+      }
 
-        save = new ArkSavegame(saveGame.toString(), oh.readingOptions());
-        latLonCalculator = LatLonCalculator.forSave(save);
-        stopwatch.stop("Loading map data");
-        if (options.has(basesSpec)) {
-          baseMap = new HashMap<>();
-          for (GameObject object : save.getObjects()) {
-            // Skip items and stuff without a location
-            if (object.isItem() || object.getLocation() == null) {
-              continue;
-            }
+      SaveWatcher watcher = null;
+      if (options.has(watchSpec)) {
+        watcher = new SaveWatcher(saveDir, path -> TRIBE_PATTERN.matcher(path.getFileName().toString()).matches() || mapNeeded && path.equals(saveGame));
+      }
+
+      ArkSavegame loadedSave = null;
+      Set<Path> changed = null;
+
+      do {
+        Stopwatch stopwatch = new Stopwatch(oh.useStopwatch());
+
+        final ArkSavegame save;
+        final Map<Integer, Set<TribeBase>> baseMap;
+        final LatLonCalculator latLonCalculator;
+
+        if (mapNeeded) {
+          // When watching the map is only read again if it changed
+          if (loadedSave == null || changed.contains(saveGame)) {
+            loadedSave = new ArkSavegame(saveGame.toString(), oh.readingOptions());
+            stopwatch.stop("Loading map data");
+          }
+          save = loadedSave;
+          latLonCalculator = LatLonCalculator.forSave(save);
+          if (options.has(basesSpec)) {
+            baseMap = new HashMap<>();
+            for (GameObject object : save.getObjects()) {
+              // Skip items and stuff without a location
+              if (object.isItem() || object.getLocation() == null) {
+                continue;
+              }
 
-            String signText = object.getPropertyValue("SignText", String.class);
-            Number targetingTeam = object.getPropertyValue("TargetingTeam", Number.class);
+              String signText = object.getPropertyValue("SignText", String.class);
+              Number targetingTeam = object.getPropertyValue("TargetingTeam", Number.class);
 
-            if (signText != null && targetingTeam != null) {
-              // Might be a 'Base' sign
-              Matcher matcher = BASE_PATTERN.matcher(signText);
-              if (matcher.matches()) {
-                // Found a base sign, add it to the set, automatically replacing duplicates
-                int tribeId = targetingTeam.intValue();
-                LocationData location = object.getLocation();
-                String baseName = matcher.group(1);
-                float size = Float.parseFloat(matcher.group(2));
+              if (signText != null && targetingTeam != null) {
+                // Might be a 'Base' sign
+                Matcher matcher = BASE_PATTERN.matcher(signText);
+                if (matcher.matches()) {
+                  // Found a base sign, add it to the set, automatically replacing duplicates
+                  int tribeId = targetingTeam.intValue();
+                  LocationData location = object.getLocation();
+                  String baseName = matcher.group(1);
+                  float size = Float.parseFloat(matcher.group(2));
 
-                TribeBase base = new TribeBase(baseName, location.getX(), location.getY(), location.getZ(), size);
+                  TribeBase base = new TribeBase(baseName, location.getX(), location.getY(), location.getZ(), size);
 
-                baseMap.computeIfAbsent(tribeId, key -> new HashSet<>()).add(base);
+                  baseMap.computeIfAbsent(tribeId, key -> new HashSet<>()).add(base);
+                }
               }
             }
+            stopwatch.stop("Collecting bases");
+          } else {
+            baseMap = null;
           }
-          stopwatch.stop("Collecting bases");
         } else {
+          save = null;
           baseMap = null;
+          latLonCalculator = null;
         }
-      } else {
-        save = null;
-        baseMap = null;
-        latLonCalculator = null;
-      }
 
-      Filter<Path> tribeFilter = path -> TRIBE_PATTERN.matcher(path.getFileName().toString()).matches();
-      final Set<Integer> tribeIds = new HashSet<>();
-
-      BiConsumer<JsonGenerator, Integer> mapWriter = (generator, tribeId) -> {
-        if (mapNeeded) {
-          Map<ArkName, Integer> structures = new HashMap<>();
-          Map<ArkName, Integer> creatures = new HashMap<>();
-          List<ArkItem> items = new ArrayList<>();
-          List<ArkItem> blueprints = new ArrayList<>();
-          // Apparently there is a behavior in ARK causing certain structures to exist twice
-          // within a save
-          Set<ArkName> processedList = new HashSet<>();
-          // Bases
-          Set<TribeBase> bases = options.has(basesSpec) ? baseMap.get(tribeId) : null;
-
-          for (GameObject object : save.getObjects()) {
-            if (object.isItem()) {
-              continue;
-            }
+        Filter<Path> tribeFilter = path -> TRIBE_PATTERN.matcher(path.getFileName().toString()).matches();
+        final Set<Integer> tribeIds = ConcurrentHashMap.newKeySet();
 
-            Number targetingTeam = object.getPropertyValue("TargetingTeam", Number.class);
-            if (targetingTeam == null 
-                || (tribeId != null && targetingTeam.intValue() != tribeId)
-                || (tribeId == null && (targetingTeam.intValue() < 50000 || tribeIds.contains(targetingTeam.intValue())))) {
-              continue;
+        // Unless the map changed only tribes with a changed file need to be written again
+        final Set<Path> changedTribes = changed == null || mapNeeded && changed.contains(saveGame) ? null : changed;
+        if (changed != null) {
+          for (Path path : changed) {
+            if (tribeFilter.accept(path) && !Files.exists(path)) {
+              sink.delete(tribeIdOf(path) + ".json");
             }
+          }
+        }
 
-            // Determine base if we have bases
-            final TribeBase base;
-            if (bases != null && object.getLocation() != null) {
-              TribeBase matchedBase = null;
-              for (TribeBase potentialBase : bases) {
-                if (potentialBase.insideBounds(object.getLocation())) {
-                  matchedBase = potentialBase;
-                  break;
-                }
+        BiConsumer<JsonGenerator, Integer> mapWriter = (generator, tribeId) -> {
+          if (mapNeeded) {
+            Map<ArkName, Integer> structures = new HashMap<>();
+            Map<ArkName, Integer> creatures = new HashMap<>();
+            List<ArkItem> items = new ArrayList<>();
+            List<ArkItem> blueprints = new ArrayList<>();
+            // Apparently there is a behavior in ARK causing certain structures to exist twice
+            // within a save
+            Set<ArkName> processedList = new HashSet<>();
+            // Bases
+            Set<TribeBase> bases = options.has(basesSpec) ? baseMap.get(tribeId) : null;
+
+            for (GameObject object : save.getObjects()) {
+              if (object.isItem()) {
+                continue;
               }
-              base = matchedBase;
-            } else {
-              base = null;
-            }
 
-            if (object.getClassString().contains("_Character_") || object.getClassString().equals("Raft_BP_C")) {
-              if (!processedList.contains(object.getNames().get(0))) {
-                if (base != null) {
-                  base.getCreatures().merge(object.getClassName(), 1, Integer::sum);
-                } else {
-                  creatures.merge(object.getClassName(), 1, Integer::sum);
-                }
-                processedList.add(object.getNames().get(0));
-              } else {
-                // Duped Creature
+              Number targetingTeam = object.getPropertyValue("TargetingTeam", Number.class);
+              if (targetingTeam == null 
+                  || (tribeId != null && targetingTeam.intValue() != tribeId)
+                  || (tribeId == null && (targetingTeam.intValue() < 50000 || tribeIds.contains(targetingTeam.intValue())))) {
                 continue;
               }
-            } else if (!object.hasAnyProperty("LinkedPlayerDataID") && !object.hasAnyProperty("AssociatedPrimalItem") && !object.hasAnyProperty("MyItem")) {
-              // LinkedPlayerDataID: Players ain't structures
-              // AssociatedPrimalItem: Items equipped by sleeping players
-              // MyItem: dropped item
-              if (!processedList.contains(object.getNames().get(0))) {
-                if (base != null) {
-                  base.getStructures().merge(object.getClassName(), 1, Integer::sum);
-                } else {
-                  structures.merge(object.getClassName(), 1, Integer::sum);
+
+              // Determine base if we have bases
+              final TribeBase base;
+              if (bases != null && object.getLocation() != null) {
+                TribeBase matchedBase = null;
+                for (TribeBase potentialBase : bases) {
+                  if (potentialBase.insideBounds(object.getLocation())) {
+                    matchedBase = potentialBase;
+                    break;
+                  }
                 }
-                processedList.add(object.getNames().get(0));
+                base = matchedBase;
               } else {
-                // Duped Structure
-                continue;
-              }
-            } else {
-              if (!processedList.contains(object.getNames().get(0))) {
-                processedList.add(object.getNames().get(0));
-              } else {
-                // Duped Player
-                continue;
+                base = null;
               }
-            }
-
-            ObjectReference inventoryReference = object.getPropertyValue("MyInventoryComponent", ObjectReference.class);
-            GameObject inventory = inventoryReference != null ? inventoryReference.getObject(save) : null;
-
-            Consumer<ObjectReference> itemHandler = itemReference -> {
-              GameObject item = itemReference.getObject(save);
-              if (item != null) {
-                if (item.hasAnyProperty("bIsEngram") || item.hasAnyProperty("bHideFromInventoryDisplay")) {
-                  return;
-                }
-
-                if (processedList.contains(item.getNames().get(0))) {
-                  // happens for players having items in their quick bar
-                  return;
-                }
-                processedList.add(item.getNames().get(0));
 
-                if (item.hasAnyProperty("bIsBlueprint")) {
+              if (object.getClassString().contains("_Character_") || object.getClassString().equals("Raft_BP_C")) {
+                if (!processedList.contains(object.getNames().get(0))) {
                   if (base != null) {
-                    base.getBlueprints().add(new ArkItem(item));
+                    base.getCreatures().merge(object.getClassName(), 1, Integer::sum);
                   } else {
-                    blueprints.add(new ArkItem(item));
+                    creatures.merge(object.getClassName(), 1, Integer::sum);
                   }
+                  processedList.add(object.getNames().get(0));
                 } else {
+                  // Duped Creature
+                  continue;
+                }
+              } else if (!object.hasAnyProperty("LinkedPlayerDataID") && !object.hasAnyProperty("AssociatedPrimalItem") && !object.hasAnyProperty("MyItem")) {
+                // LinkedPlayerDataID: Players ain't structures
+                // AssociatedPrimalItem: Items equipped by sleeping players
+                // MyItem: dropped item
+                if (!processedList.contains(object.getNames().get(0))) {
                   if (base != null) {
-                    base.getItems().add(new ArkItem(item));
+                    base.getStructures().merge(object.getClassName(), 1, Integer::sum);
                   } else {
-                    items.add(new ArkItem(item));
+                    structures.merge(object.getClassName(), 1, Integer::sum);
                   }
+                  processedList.add(object.getNames().get(0));
+                } else {
+                  // Duped Structure
+                  continue;
+                }
+              } else {
+                if (!processedList.contains(object.getNames().get(0))) {
+                  processedList.add(object.getNames().get(0));
+                } else {
+                  // Duped Player
+                  continue;
                 }
               }
-            };
 
-            if (inventory != null) {
-              List<ObjectReference> inventoryItems = inventory.getPropertyValue("InventoryItems", ArkArrayObjectReference.class);
-              List<ObjectReference> slotItems = inventory.getPropertyValue("ItemSlots", ArkArrayObjectReference.class);
-              List<ObjectReference> equippedItems = inventory.getPropertyValue("EquippedItems", ArkArrayObjectReference.class);
+              ObjectReference inventoryReference = object.getPropertyValue("MyInventoryComponent", ObjectReference.class);
+              GameObject inventory = inventoryReference != null ? inventoryReference.getObject(save) : null;
+
+              Consumer<ObjectReference> itemHandler = itemReference -> {
+                GameObject item = itemReference.getObject(save);
+                if (item != null) {
+                  if (item.hasAnyProperty("bIsEngram") || item.hasAnyProperty("bHideFromInventoryDisplay")) {
+                    return;
+                  }
+
+                  if (processedList.contains(item.getNames().get(0))) {
+                    // happens for players having items in their quick bar
+                    return;
+                  }
+                  processedList.add(item.getNames().get(0));
 
-              Consumer<List<ObjectReference>> itemListHandler = list -> {
-                if (list != null) {
-                  for (ObjectReference itemReference : list) {
-                    itemHandler.accept(itemReference);
+                  if (item.hasAnyProperty("bIsBlueprint")) {
+                    if (base != null) {
+                      base.getBlueprints().add(new ArkItem(item));
+                    } else {
+                      blueprints.add(new ArkItem(item));
+                    }
+                  } else {
+                    if (base != null) {
+                      base.getItems().add(new ArkItem(item));
+                    } else {
+                      items.add(new ArkItem(item));
+                    }
                   }
                 }
               };
 
-              itemListHandler.accept(inventoryItems);
-              itemListHandler.accept(slotItems);
-              itemListHandler.accept(equippedItems);
-            }
+              if (inventory != null) {
+                List<ObjectReference> inventoryItems = inventory.getPropertyValue("InventoryItems", ArkArrayObjectReference.class);
+                List<ObjectReference> slotItems = inventory.getPropertyValue("ItemSlots", ArkArrayObjectReference.class);
+                List<ObjectReference> equippedItems = inventory.getPropertyValue("EquippedItems", ArkArrayObjectReference.class);
+
+                Consumer<List<ObjectReference>> itemListHandler = list -> {
+                  if (list != null) {
+                    for (ObjectReference itemReference : list) {
+                      itemHandler.accept(itemReference);
+                    }
+                  }
+                };
+
+                itemListHandler.accept(inventoryItems);
+                itemListHandler.accept(slotItems);
+                itemListHandler.accept(equippedItems);
+              }
 
-            ObjectReference myItem = object.getPropertyValue("MyItem", ObjectReference.class);
+              ObjectReference myItem = object.getPropertyValue("MyItem", ObjectReference.class);
 
-            if (myItem != null) {
-              itemHandler.accept(myItem);
+              if (myItem != null) {
+                itemHandler.accept(myItem);
+              }
             }
-          }
 
-          Consumer<Map<ArkName, Integer>> writeStructures = structMap -> {
-            if (options.has(structuresSpec)) {
-              generator.writeStartArray("structures");
+            Consumer<Map<ArkName, Integer>> writeStructures = structMap -> {
+              if (options.has(structuresSpec)) {
+                generator.writeStartArray("structures");
 
-              structMap.entrySet().stream().sorted(comparing(Map.Entry::getValue, reverseOrder())).forEach(e -> {
-                generator.writeStartObject();
+                structMap.entrySet().stream().sorted(comparing(Map.Entry::getValue, reverseOrder())).forEach(e -> {
+                  generator.writeStartObject();
 
-                String name = e.getKey().toString();
-                if (DataManager.hasStructure(name)) {
-                  name = DataManager.getStructure(name).getName();
-                }
+                  String name = e.getKey().toString();
+                  if (DataManager.hasStructure(name)) {
+                    name = DataManager.getStructure(name).getName();
+                  }
+
+                  generator.write("name", name);
+                  generator.write("count", e.getValue());
 
-                generator.write("name", name);
-                generator.write("count", e.getValue());
+                  generator.writeEnd();
+                });
 
                 generator.writeEnd();
-              });
+              }
+            };
 
-              generator.writeEnd();
-            }
-          };
+            Consumer<Map<ArkName, Integer>> writeCreatures = creaMap -> {
+              if (options.has(tamedSpec)) {
+                generator.writeStartArray("tamed");
 
-          Consumer<Map<ArkName, Integer>> writeCreatures = creaMap -> {
-            if (options.has(tamedSpec)) {
-              generator.writeStartArray("tamed");
+                creaMap.entrySet().stream().sorted(comparing(Map.Entry::getValue, reverseOrder())).forEach(e -> {
+                  generator.writeStartObject();
 
-              creaMap.entrySet().stream().sorted(comparing(Map.Entry::getValue, reverseOrder())).forEach(e -> {
-                generator.writeStartObject();
+                  String name = e.getKey().toString();
+                  if (DataManager.hasCreature(name)) {
+                    name = DataManager.getCreature(name).getName();
+                  }
 
-                String name = e.getKey().toString();
-                if (DataManager.hasCreature(name)) {
-                  name = DataManager.getCreature(name).getName();
-                }
+                  generator.write("name", name);
+                  generator.write("count", e.getValue());
 
-                generator.write("name", name);
-                generator.write("count", e.getValue());
+                  generator.writeEnd();
+                });
 
                 generator.writeEnd();
-              });
+              }
+            };
 
-              generator.writeEnd();
-            }
-          };
+            if (options.has(basesSpec) && bases != null) {
 
-          if (options.has(basesSpec) && bases != null) {
+              generator.writeStartArray("bases");
 
-            generator.writeStartArray("bases");
+              for (TribeBase base : bases) {
+                generator.writeStartObject();
+
+                generator.write("name", base.getName());
+                generator.write("x", base.getX());
+                generator.write("y", base.getY());
+                generator.write("z", base.getZ());
+                generator.write("lat", latLonCalculator.calculateLat(base.getY()));
+                generator.write("lon", latLonCalculator.calculateLon(base.getX()));
+                generator.write("radius", base.getSize());
+                writeCreatures.accept(base.getCreatures());
+                writeStructures.accept(base.getStructures());
+                if (itemsLong) {
+                  SharedWriters.writeInventoryLong(generator, base.getItems(), "items");
+                  SharedWriters.writeInventoryLong(generator, base.getBlueprints(), "blueprints");
+                } else {
+                  SharedWriters.writeInventorySummary(generator, base.getItems(), "items");
+                  SharedWriters.writeInventorySummary(generator, base.getBlueprints(), "blueprints");
+                }
+
+                generator.writeEnd();
+              }
 
-            for (TribeBase base : bases) {
               generator.writeStartObject();
 
-              generator.write("name", base.getName());
-              generator.write("x", base.getX());
-              generator.write("y", base.getY());
-              generator.write("z", base.getZ());
-              generator.write("lat", latLonCalculator.calculateLat(base.getY()));
-              generator.write("lon", latLonCalculator.calculateLon(base.getX()));
-              generator.write("radius", base.getSize());
-              writeCreatures.accept(base.getCreatures());
-              writeStructures.accept(base.getStructures());
+              writeCreatures.accept(creatures);
+              writeStructures.accept(structures);
               if (itemsLong) {
-                SharedWriters.writeInventoryLong(generator, base.getItems(), "items");
-                SharedWriters.writeInventoryLong(generator, base.getBlueprints(), "blueprints");
+                SharedWriters.writeInventoryLong(generator, items, "items");
+                SharedWriters.writeInventoryLong(generator, blueprints, "blueprints");
               } else {
-                SharedWriters.writeInventorySummary(generator, base.getItems(), "items");
-                SharedWriters.writeInventorySummary(generator, base.getBlueprints(), "blueprints");
+                SharedWriters.writeInventorySummary(generator, items, "items");
+                SharedWriters.writeInventorySummary(generator, blueprints, "blueprints");
               }
 
               generator.writeEnd();
-            }
 
-            generator.writeStartObject();
+              generator.writeEnd();
 
-            writeCreatures.accept(creatures);
-            writeStructures.accept(structures);
-            if (itemsLong) {
-              SharedWriters.writeInventoryLong(generator, items, "items");
-              SharedWriters.writeInventoryLong(generator, blueprints, "blueprints");
             } else {
-              SharedWriters.writeInventorySummary(generator, items, "items");
-              SharedWriters.writeInventorySummary(generator, blueprints, "blueprints");
-            }
-
-            generator.writeEnd();
-
-            generator.writeEnd();
 
-          } else {
+              writeCreatures.accept(creatures);
+              writeStructures.accept(structures);
+              if (itemsLong) {
+                SharedWriters.writeInventoryLong(generator, items, "items");
+                SharedWriters.writeInventoryLong(generator, blueprints, "blueprints");
+              } else {
+                SharedWriters.writeInventorySummary(generator, items, "items");
+                SharedWriters.writeInventorySummary(generator, blueprints, "blueprints");
+              }
 
-            writeCreatures.accept(creatures);
-            writeStructures.accept(structures);
-            if (itemsLong) {
-              SharedWriters.writeInventoryLong(generator, items, "items");
-              SharedWriters.writeInventoryLong(generator, blueprints, "blueprints");
-            } else {
-              SharedWriters.writeInventorySummary(generator, items, "items");
-              SharedWriters.writeInventorySummary(generator, blueprints, "blueprints");
             }
-
           }
+        };
+
+        List<Path> tribePaths = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(saveDir, tribeFilter)) {
+          stream.forEach(tribePaths::add);
         }
-      };
 
-      try (DirectoryStream<Path> stream = Files.newDirectoryStream(saveDir, tribeFilter)) {
-        for (Path path : stream) {
+        FilePipeline.run(tribePaths, oh.useParallel(), path -> {
+          if (changedTribes != null && !changedTribes.contains(path)) {
+            tribeIds.add(tribeIdOf(path));
+            return null;
+          }
+
           try {
-            ArkTribe tribe = new ArkTribe(path.toString());
-            StructPropertyList tribeData = tribe.getPropertyValue("TribeData", StructPropertyList.class);
+            StructPropertyList tribeData = SelectiveReader.readTribe(path, TRIBE_PROPERTIES);
 
             int tribeId = tribeData.getPropertyValue("TribeID", Number.class).intValue();
 
@@ -631,170 +755,404 @@ public class PlayerListCommands {
 
             String tribeFileName = tribeData.getPropertyValue("TribeID", Number.class).toString() + ".json";
 
-            Path tribePath = outputDirectory.resolve(tribeFileName);
+            return () -> {
+              try {
+                sink.write(tribeFileName, generator -> {
+                  generator.writeStartObject();
 
-            CommonFunctions.writeJson(tribePath.toString(), generator -> {
-              generator.writeStartObject();
+                  generator.write("name", tribeData.getPropertyValue("TribeName", String.class));
 
-              generator.write("name", tribeData.getPropertyValue("TribeName", String.class));
+                  // TODO check what happens to abandoned tribes
+                  int ownerId = tribeData.getPropertyValue("OwnerPlayerDataID", Number.class).intValue();
+                  List<String> memberNames = tribeData.getPropertyValue("MembersPlayerName", ArkArrayString.class);
+                  List<Integer> memberIds = tribeData.getPropertyValue("MembersPlayerDataID", ArkArrayInt.class);
+                  List<Integer> adminIds = tribeData.getPropertyValue("TribeAdmins", ArkArrayInt.class);
 
-              // TODO check what happens to abandoned tribes
-              int ownerId = tribeData.getPropertyValue("OwnerPlayerDataID", Number.class).intValue();
-              List<String> memberNames = tribeData.getPropertyValue("MembersPlayerName", ArkArrayString.class);
-              List<Integer> memberIds = tribeData.getPropertyValue("MembersPlayerDataID", ArkArrayInt.class);
-              List<Integer> adminIds = tribeData.getPropertyValue("TribeAdmins", ArkArrayInt.class);
+                  if (!memberNames.isEmpty()) {
+                    generator.writeStartArray("members");
 
-              if (!memberNames.isEmpty()) {
-                generator.writeStartArray("members");
+                    memberNames.forEach(generator::write);
 
-                memberNames.forEach(generator::write);
+                    generator.writeEnd();
+                  }
 
-                generator.writeEnd();
-              }
+                  if (adminIds != null && !adminIds.isEmpty()) {
+                    generator.writeStartArray("admins");
 
-              if (adminIds != null && !adminIds.isEmpty()) {
-                generator.writeStartArray("admins");
+                    for (Integer adminId : adminIds) {
+                      int index = memberIds.indexOf(adminId);
+                      if (index > -1) {
+                        generator.write(memberNames.get(index));
+                      }
+                    }
 
-                for (Integer adminId : adminIds) {
-                  int index = memberIds.indexOf(adminId);
-                  if (index > -1) {
-                    generator.write(memberNames.get(index));
+                    generator.writeEnd();
                   }
-                }
 
-                generator.writeEnd();
-              }
-
-              int ownerIndex = memberIds.indexOf(ownerId);
-              if (ownerIndex > -1) {
-                generator.write("owner", memberNames.get(ownerIndex));
-              }
+                  int ownerIndex = memberIds.indexOf(ownerId);
+                  if (ownerIndex > -1) {
+                    generator.write("owner", memberNames.get(ownerIndex));
+                  }
 
-              List<String> tribeLog = tribeData.getPropertyValue("TribeLog", ArkArrayString.class);
+                  List<String> tribeLog = tribeData.getPropertyValue("TribeLog", ArkArrayString.class);
 
-              if (tribeLog != null && !tribeLog.isEmpty()) {
-                generator.writeStartArray("tribeLog");
+                  if (tribeLog != null && !tribeLog.isEmpty()) {
+                    generator.writeStartArray("tribeLog");
 
-                tribeLog.forEach(generator::write);
+                    tribeLog.forEach(generator::write);
 
-                generator.writeEnd();
-              }
+                    generator.writeEnd();
+                  }
 
-              mapWriter.accept(generator, tribeId);
+                  mapWriter.accept(generator, tribeId);
 
-              generator.writeEnd();
-            }, oh);
+                  generator.writeEnd();
+                });
+              } catch (IOException e) {
+                throw new RuntimeException(e);
+              } catch (RuntimeException ex) {
+                System.err.println("Found potentially corrupt ArkTribe: " + path.toString());
+                if (oh.isVerbose()) {
+                  ex.printStackTrace();
+                }
+              }
+            };
           } catch (RuntimeException ex) {
             System.err.println("Found potentially corrupt ArkTribe: " + path.toString());
             if (oh.isVerbose()) {
               ex.printStackTrace();
             }
+            return null;
           }
+        });
+
+        if (options.has(tribelessSpec)) {
+          sink.write("tribeless.json", generator -> {
+            generator.writeStartObject();
+
+            mapWriter.accept(generator, null);
+
+            generator.writeEnd();
+          });
+        }
+
+        stopwatch.stop("Loading tribes and writing info");
+        stopwatch.print();
+      } while (watcher != null && (changed = watcher.awaitChanges()) != null);
+
+      sink.commit();
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  /**
+   * Tribe files are named after the id of the tribe
+   */
+  private static int tribeIdOf(Path tribePath) {
+    String fileName = tribePath.getFileName().toString();
+    return Integer.parseInt(fileName.substring(0, fileName.length() - ".arktribe".length()));
+  }
+
+  private static final Set<String> TRIBE_LOG_PROPERTIES = new HashSet<>(Arrays.asList("TribeID", "TribeName", "TribeLog"));
+
+  /**
+   * Appends new tribe log entries to an NDJSON file, remembering per tribe how far the log has been read.
+   *
+   * The NDJSON file is appended before the state is saved, delivery is at-least-once: if the state can't
+   * be written the same entries are appended again by the next run. Tribes whose file can't be read keep
+   * their cursor until their file is deleted.
+   */
+  public static void tribeLog(OptionHandler oh) {
+    OptionSet options = oh.reparse();
+
+    List<String> params = oh.getParams(options);
+    if (params.size() != 2 || oh.wantsHelp()) {
+      oh.printCommandHelp();
+      System.exit(1);
+      return;
+    }
+
+    Path saveDir = Paths.get(params.get(0)).toAbsolutePath().getParent();
+    Path streamFile = Paths.get(params.get(1)).toAbsolutePath();
+    Path stateFile = streamFile.resolveSibling(streamFile.getFileName() + ".state");
+
+    try {
+      Stopwatch stopwatch = new Stopwatch(oh.useStopwatch());
+
+      // Per tribe: number of entries and hash of the last entry seen in the previous run
+      Map<Integer, long[]> cursors = new ConcurrentHashMap<>();
+      if (Files.exists(stateFile)) {
+        JsonObject state = (JsonObject) CommonFunctions.readJson(stateFile.toString());
+        for (Map.Entry<String, JsonValue> entry : state.entrySet()) {
+          JsonObject cursor = (JsonObject) entry.getValue();
+          cursors.put(Integer.valueOf(entry.getKey()), new long[] {cursor.getJsonNumber("count").longValue(), cursor.getJsonNumber("hash").longValue()});
         }
       }
 
-      if (options.has(tribelessSpec)) {
-        Path tribePath = outputDirectory.resolve("tribeless.json");
+      Filter<Path> tribeFilter = path -> TRIBE_PATTERN.matcher(path.getFileName().toString()).matches();
+
+      List<Path> tribePaths = new ArrayList<>();
+      try (DirectoryStream<Path> stream = Files.newDirectoryStream(saveDir, tribeFilter)) {
+        stream.forEach(tribePaths::add);
+      }
+
+      Map<Integer, List<String>> newEntries = new ConcurrentHashMap<>();
+      Map<Integer, String> tribeNames = new ConcurrentHashMap<>();
+      Set<Integer> tribeIds = ConcurrentHashMap.newKeySet();
 
-        CommonFunctions.writeJson(tribePath.toString(), generator -> {
-          generator.writeStartObject();
+      FilePipeline.run(tribePaths, oh.useParallel(), path -> {
+        // Taken from the file name, a file the server is still writing must not lose its cursor
+        tribeIds.add(tribeIdOf(path));
 
-          mapWriter.accept(generator, null);
+        try {
+          StructPropertyList tribeData = SelectiveReader.readTribe(path, TRIBE_LOG_PROPERTIES);
 
-          generator.writeEnd();
-        }, oh);
+          int tribeId = tribeData.getPropertyValue("TribeID", Number.class).intValue();
+
+          List<String> tribeLog = tribeData.getPropertyValue("TribeLog", ArkArrayString.class);
+          if (tribeLog == null || tribeLog.isEmpty()) {
+            return null;
+          }
+
+          // The log only grows at the end and loses entries at the front, look for the last seen entry at or before its old position
+          int start = 0;
+          long[] cursor = cursors.get(tribeId);
+          if (cursor != null) {
+            for (int i = (int) Math.min(tribeLog.size(), cursor[0]) - 1; i >= 0; i--) {
+              if (hashLogEntry(tribeLog.get(i)) == cursor[1]) {
+                start = i + 1;
+                break;
+              }
+            }
+          }
+
+          if (start < tribeLog.size()) {
+            newEntries.put(tribeId, new ArrayList<>(tribeLog.subList(start, tribeLog.size())));
+            tribeNames.put(tribeId, tribeData.findPropertyValue("TribeName", String.class).orElse(""));
+          }
+
+          cursors.put(tribeId, new long[] {tribeLog.size(), hashLogEntry(tribeLog.get(tribeLog.size() - 1))});
+        } catch (RuntimeException ex) {
+          System.err.println("Found potentially corrupt ArkTribe: " + path.toString());
+          if (oh.isVerbose()) {
+            ex.printStackTrace();
+          }
+        }
+        return null;
+      });
+
+      stopwatch.stop("Loading tribes");
+
+      // Appended in tribe order, one JSON object per line
+      int count = 0;
+      try (BufferedWriter writer = Files.newBufferedWriter(streamFile, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+        for (Integer tribeId : new TreeSet<>(newEntries.keySet())) {
+          String tribeName = tribeNames.get(tribeId);
+          for (String entry : newEntries.get(tribeId)) {
+            writer.write(Json.createObjectBuilder().add("tribeId", tribeId).add("tribeName", tribeName).add("entry", entry).build().toString());
+            writer.newLine();
+            count++;
+          }
+        }
       }
 
-      stopwatch.stop("Loading tribes and writing info");
+      // Forget tribes which don't exist anymore
+      cursors.keySet().retainAll(tribeIds);
+
+      // Replaced atomically, a crash keeps the previous state
+      CommonFunctions.writeJsonIfChanged(stateFile, generator -> {
+        generator.writeStartObject();
+        cursors.forEach((tribeId, cursor) -> {
+          generator.writeStartObject(tribeId.toString());
+          generator.write("count", cursor[0]);
+          generator.write("hash", cursor[1]);
+          generator.writeEnd();
+        });
+        generator.writeEnd();
+      }, oh);
+
+      stopwatch.stop("Writing " + count + " entries");
       stopwatch.print();
     } catch (IOException e) {
       throw new RuntimeException(e);
     }
   }
 
+  private static long hashLogEntry(String entry) {
+    return new Hash64().update(entry).getValue();
+  }
+
   public static void cluster(OptionHandler oh) {
-    List<String> params = oh.getParams();
+    OptionSpec<Void> skipUpToDateSpec = oh.accepts("skip-up-to-date", "Skip cluster files whose output is newer than the cluster file.");
+    OptionSpec<Integer> threadsSpec = oh.accepts("threads", "Number of threads used with --parallel, defaults to the number of cores.").withRequiredArg().ofType(Integer.class);
+    OptionSpec<Void> watchSpec = oh.accepts("watch", "Keep running and write the output of cluster files again whenever they change.");
+    OptionSpec<String> outputFormatSpec = OutputSink.accepts(oh);
+
+    OptionSet options = oh.reparse();
+
+    List<String> params = oh.getParams(options);
     if (params.size() != 2 || oh.wantsHelp()) {
       oh.printCommandHelp();
       System.exit(1);
       return;
     }
 
+    if ((options.has(skipUpToDateSpec) || options.has(watchSpec)) && !options.valueOf(outputFormatSpec).equals("dir")) {
+      System.err.println("--skip-up-to-date and --watch need --output-format dir");
+      System.exit(1);
+      return;
+    }
+
     Path clusterDirectory = Paths.get(params.get(0)).toAbsolutePath();
-    Path outputDirectory = Paths.get(params.get(1)).toAbsolutePath();
 
     DataManager.loadData(oh.lang());
 
-    try (DirectoryStream<Path> stream = Files.newDirectoryStream(clusterDirectory)) {
-      for (Path path : stream) {
-        if (!Files.isRegularFile(path)) {
-          continue;
+    boolean skipUpToDate = options.has(skipUpToDateSpec);
+
+    // Files differ a lot in size, work stealing keeps all threads busy
+    int threads = options.has(threadsSpec) ? options.valueOf(threadsSpec) : Runtime.getRuntime().availableProcessors();
+    ForkJoinPool pool = oh.useParallel() ? new ForkJoinPool(threads) : null;
+
+    try (OutputSink sink = OutputSink.open(options.valueOf(outputFormatSpec), params.get(1), oh)) {
+      SaveWatcher watcher = options.has(watchSpec) ? new SaveWatcher(clusterDirectory, path -> true) : null;
+
+      List<Path> paths = new ArrayList<>();
+      try (DirectoryStream<Path> stream = Files.newDirectoryStream(clusterDirectory)) {
+        for (Path path : stream) {
+          if (Files.isRegularFile(path)) {
+            paths.add(path);
+          }
         }
-        try {
-          ArkCloudInventory cloudInventory = new ArkCloudInventory(path.toString(), oh.readingOptions());
+      }
 
-          PropertyContainer arkData = cloudInventory.getInventoryData().getPropertyValue("MyArkData", PropertyContainer.class);
+      while (true) {
+        writeClusterFiles(oh, paths, sink, skipUpToDate, pool);
 
-          CommonFunctions.writeJson(outputDirectory.resolve(path.getFileName().toString() + ".json").toString(), generator -> {
+        if (watcher == null) {
+          break;
+        }
 
-            generator.writeStartObject();
+        // Only files which changed since the last round
+        paths = new ArrayList<>();
+        for (Path path : watcher.awaitChanges()) {
+          if (Files.isRegularFile(path)) {
+            paths.add(path);
+          } else if (!Files.exists(path)) {
+            sink.delete(path.getFileName().toString() + ".json");
+          }
+        }
+      }
 
-            ArkArrayStruct tamedDinosData = arkData.getPropertyValue("ArkTamedDinosData", ArkArrayStruct.class);
-            if (tamedDinosData != null && !tamedDinosData.isEmpty()) {
-              generator.writeStartArray("creatures");
-              for (Struct dinoStruct : tamedDinosData) {
-                PropertyContainer dino = (PropertyContainer) dinoStruct;
-                ArkContainer container = null;
-                if (cloudInventory.getInventoryVersion() == 1) {
-                  ArkArrayUInt8 byteData = dino.getPropertyValue("DinoData", ArkArrayUInt8.class);
+      sink.commit();
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    } finally {
+      if (pool != null) {
+        pool.shutdown();
+      }
+    }
+  }
 
-                  container = new ArkContainer(byteData);
-                } else if (cloudInventory.getInventoryVersion() == 3) {
-                  ArkArrayInt8 byteData = dino.getPropertyValue("DinoData", ArkArrayInt8.class);
+  private static void writeClusterFiles(OptionHandler oh, List<Path> paths, OutputSink sink, boolean skipUpToDate, ForkJoinPool pool) {
+    if (pool != null) {
+      try {
+        pool.submit(() -> paths.parallelStream().forEach(path -> writeClusterFile(oh, path, sink, skipUpToDate))).get();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new RuntimeException(e);
+      } catch (ExecutionException e) {
+        throw new RuntimeException(e.getCause());
+      }
+    } else {
+      for (Path path : paths) {
+        writeClusterFile(oh, path, sink, skipUpToDate);
+      }
+    }
+  }
 
-                  container = new ArkContainer(byteData);
-                }
+  private static void writeClusterFile(OptionHandler oh, Path path, OutputSink sink, boolean skipUpToDate) {
+    String outputName = path.getFileName().toString() + ".json";
 
-                ObjectReference dinoClass = dino.getPropertyValue("DinoClass", ObjectReference.class);
-                // Skip "BlueprintGeneratedClass " = 24 chars
-                String dinoClassName = dinoClass.getObjectString().toString().substring(24);
-                generator.writeStartObject();
+    try {
+      if (skipUpToDate) {
+        Path outputPath = sink.getDirectory().resolve(outputName);
+        if (Files.exists(outputPath) && Files.getLastModifiedTime(outputPath).compareTo(Files.getLastModifiedTime(path)) >= 0) {
+          return;
+        }
+      }
 
-                generator.write("type", DataManager.hasCreatureByPath(dinoClassName) ? DataManager.getCreatureByPath(dinoClassName).getName() : dinoClassName);
+      ArkCloudInventory cloudInventory = new ArkCloudInventory(path.toString(), oh.readingOptions());
 
-                // NPE for unknown versions
-                SharedWriters.writeCreatureInfo(generator, container.getObjects().get(0), LatLonCalculator.DEFAULT, container, false, "data");
-                generator.writeEnd();
-              }
-              generator.writeEnd();
-            }
+      PropertyContainer arkData = cloudInventory.getInventoryData().getPropertyValue("MyArkData", PropertyContainer.class);
 
-            ArkArrayStruct arkItems = arkData.getPropertyValue("ArkItems", ArkArrayStruct.class);
-            if (arkItems != null) {
-              List<ArkItem> items = new ArrayList<>();
-              for (Struct itemStruct : arkItems) {
-                PropertyContainer item = (PropertyContainer) itemStruct;
-                PropertyContainer netItem = item.getPropertyValue("ArkTributeItem", PropertyContainer.class);
+      sink.write(outputName, generator -> {
 
-                items.add(new ArkItem(netItem));
-              }
+        generator.writeStartObject();
 
-              if (!items.isEmpty()) {
-                SharedWriters.writeInventoryLong(generator, items, "items", true);
-              }
+        ArkArrayStruct tamedDinosData = arkData.getPropertyValue("ArkTamedDinosData", ArkArrayStruct.class);
+        if (tamedDinosData != null && !tamedDinosData.isEmpty()) {
+          generator.writeStartArray("creatures");
+          for (Struct dinoStruct : tamedDinosData) {
+            PropertyContainer dino = (PropertyContainer) dinoStruct;
+            // Only the objects read by writeCreatureInfo get decoded
+            EmbeddedContainer container = null;
+            if (cloudInventory.getInventoryVersion() == 1) {
+              ArkArrayUInt8 byteData = dino.getPropertyValue("DinoData", ArkArrayUInt8.class);
+
+              container = new EmbeddedContainer(byteData);
+            } else if (cloudInventory.getInventoryVersion() == 3) {
+              ArkArrayInt8 byteData = dino.getPropertyValue("DinoData", ArkArrayInt8.class);
+
+              container = new EmbeddedContainer(byteData);
             }
 
+            ObjectReference dinoClass = dino.getPropertyValue("DinoClass", ObjectReference.class);
+            // Skip "BlueprintGeneratedClass " = 24 chars
+            String dinoClassName = dinoClass.getObjectString().toString().substring(24);
+            generator.writeStartObject();
+
+            generator.write("type", DataManager.hasCreatureByPath(dinoClassName) ? DataManager.getCreatureByPath(dinoClassName).getName() : dinoClassName);
+
+            // NPE for unknown versions
+            SharedWriters.writeCreatureInfo(generator, container.getLoaded(0), LatLonCalculator.DEFAULT, container, false, "data");
             generator.writeEnd();
+          }
+          generator.writeEnd();
+        }
 
-          }, oh);
+        ArkArrayStruct arkItems = arkData.getPropertyValue("ArkItems", ArkArrayStruct.class);
+        if (arkItems != null) {
+          List<ArkItem> items = new ArrayList<>();
+          for (Struct itemStruct : arkItems) {
+            PropertyContainer item = (PropertyContainer) itemStruct;
+            PropertyContainer netItem = item.getPropertyValue("ArkTributeItem", PropertyContainer.class);
 
-        } catch (RuntimeException ex) {
-          System.err.println("Found potentially corrupt cluster data: " + path.toString());
-          if (oh.isVerbose()) {
-            ex.printStackTrace();
+            items.add(new ArkItem(netItem));
           }
+
+          if (!items.isEmpty()) {
+            SharedWriters.writeInventoryLong(generator, items, "items", true);
+          }
+        }
+
+        generator.writeEnd();
+
+      });
+
+      if (skipUpToDate) {
+        // Unchanged output keeps its old modification time, mark it as up to date for the next run
+        Path outputPath = sink.getDirectory().resolve(outputName);
+        if (Files.getLastModifiedTime(outputPath).compareTo(Files.getLastModifiedTime(path)) < 0) {
+          Files.setLastModifiedTime(outputPath, FileTime.fromMillis(System.currentTimeMillis()));
         }
       }
+
+    } catch (RuntimeException ex) {
+      System.err.println("Found potentially corrupt cluster data: " + path.toString());
+      if (oh.isVerbose()) {
+        ex.printStackTrace();
+      }
     } catch (IOException e) {
       throw new RuntimeException(e);
     }
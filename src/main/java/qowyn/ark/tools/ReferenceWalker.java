@@ -0,0 +1,90 @@
+package qowyn.ark.tools;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+import qowyn.ark.PropertyContainer;
+import qowyn.ark.arrays.ArkArray;
+import qowyn.ark.properties.Property;
+import qowyn.ark.properties.PropertyArray;
+import qowyn.ark.properties.PropertyObject;
+import qowyn.ark.properties.PropertyStruct;
+import qowyn.ark.structs.Struct;
+import qowyn.ark.types.ObjectReference;
+
+/**
+ * Visits all ObjectReferences of a PropertyContainer, including references nested in structs and arrays.
+ *
+ * Shared by {@link ObjectCollector}, {@link ObjectGraph} and the cleanup commands, references are passed on
+ * as they are without resolving them.
+ */
+public class ReferenceWalker {
+
+  public static void walk(PropertyContainer container, ReferenceVisitor visitor) {
+    Deque<PropertyContainer> toVisit = new ArrayDeque<>();
+    toVisit.push(container);
+
+    while (!toVisit.isEmpty()) {
+      PropertyContainer currentInstance = toVisit.pop();
+
+      for (Property<?> property : currentInstance.getProperties()) {
+        if (property instanceof PropertyObject) {
+          visitor.visit(((PropertyObject) property).getValue());
+        } else if (property instanceof PropertyArray) {
+          PropertyArray pa = (PropertyArray) property;
+          ArkArray<Struct> structList = pa.getTypedValue(Struct.class);
+          ArkArray<ObjectReference> objectReferenceList = pa.getTypedValue(ObjectReference.class);
+          if (structList != null) {
+            for (Struct struct : structList) {
+              if (struct instanceof PropertyContainer) {
+                toVisit.push((PropertyContainer) struct);
+              }
+            }
+          } else if (objectReferenceList != null) {
+            visitor.visitArray(objectReferenceList);
+          }
+        } else if (property instanceof PropertyStruct) {
+          Struct struct = ((PropertyStruct) property).getValue();
+          if (struct instanceof PropertyContainer) {
+            toVisit.push((PropertyContainer) struct);
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Calls {@code action} with the id of every reference by object id.
+   */
+  public static void forEachObjectId(PropertyContainer container, IdConsumer action) {
+    walk(container, reference -> {
+      if (reference != null && reference.getObjectType() == ObjectReference.TYPE_ID && reference.getObjectId() >= 0) {
+        action.accept(reference.getObjectId());
+      }
+    });
+  }
+
+  @FunctionalInterface
+  public interface ReferenceVisitor {
+
+    void visit(ObjectReference reference);
+
+    /**
+     * Called for arrays of references, visits each element by default.
+     */
+    default void visitArray(ArkArray<ObjectReference> references) {
+      for (ObjectReference reference : references) {
+        visit(reference);
+      }
+    }
+
+  }
+
+  @FunctionalInterface
+  public interface IdConsumer {
+
+    void accept(int id);
+
+  }
+
+}
@@ -0,0 +1,193 @@
+package qowyn.ark.tools;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import qowyn.ark.ArkSavegame;
+import qowyn.ark.GameObject;
+import qowyn.ark.properties.Property;
+import qowyn.ark.properties.PropertyBool;
+import qowyn.ark.properties.PropertyDouble;
+import qowyn.ark.properties.PropertyFloat;
+import qowyn.ark.properties.PropertyInt;
+import qowyn.ark.properties.PropertyInt16;
+import qowyn.ark.properties.PropertyInt64;
+import qowyn.ark.properties.PropertyInt8;
+import qowyn.ark.properties.PropertyUInt16;
+import qowyn.ark.properties.PropertyUInt32;
+import qowyn.ark.properties.PropertyUInt64;
+
+/**
+ * Writes a modified savegame by copying the original file and overwriting only the changed values.
+ *
+ * Only works for edits which don't change the size of anything, i.e. new values for
+ * existing fixed width properties directly attached to an object.
+ */
+public class SavePatcher {
+
+  private static final long WINDOW_SIZE = 64L * 1024 * 1024;
+
+  private final Path source;
+
+  private final boolean nameTable;
+
+  private final long propertiesBlockOffset;
+
+  private final Queue<Patch> patches = new ConcurrentLinkedQueue<>();
+
+  private volatile boolean complete = true;
+
+  public SavePatcher(ArkSavegame savegame, Path source) {
+    this.source = source;
+    // Saves since version 6 store names in a name table
+    this.nameTable = savegame.getSaveVersion() > 5;
+    this.propertiesBlockOffset = savegame.getPropertiesBlockOffset();
+  }
+
+  /**
+   * @return true if {@code property} has a fixed size which can be patched
+   */
+  public static boolean isPatchable(Property<?> property) {
+    return valueSize(property) > 0;
+  }
+
+  private static int valueSize(Property<?> property) {
+    if (property instanceof PropertyDouble || property instanceof PropertyInt64 || property instanceof PropertyUInt64) {
+      return Long.BYTES;
+    } else if (property instanceof PropertyFloat || property instanceof PropertyInt || property instanceof PropertyUInt32) {
+      return Integer.BYTES;
+    } else if (property instanceof PropertyInt16 || property instanceof PropertyUInt16) {
+      return Short.BYTES;
+    } else if (property instanceof PropertyInt8 || property instanceof PropertyBool) {
+      return Byte.BYTES;
+    }
+    return 0;
+  }
+
+  /**
+   * Records the current value of {@code property} of {@code object}, can be called from multiple threads.
+   *
+   * @return false if the property can't be patched, the caller has to write the whole save
+   */
+  public boolean record(GameObject object, Property<?> property) {
+    int valueSize = valueSize(property);
+    if (valueSize == 0) {
+      complete = false;
+      return false;
+    }
+
+    // The value is always the last part of a fixed width property
+    long offset = propertiesBlockOffset + object.getPropertiesOffset();
+    for (Property<?> current : object.getProperties()) {
+      offset += current.calculateSize(nameTable);
+      if (current == property) {
+        patches.add(new Patch(offset - valueSize, valueSize, encode(property, valueSize)));
+        return true;
+      }
+    }
+
+    // Property has been added or belongs to a struct
+    complete = false;
+    return false;
+  }
+
+  /**
+   * @return false if any edit couldn't be recorded as patch
+   */
+  public boolean isComplete() {
+    return complete;
+  }
+
+  private static long encode(Property<?> property, int valueSize) {
+    if (property instanceof PropertyDouble) {
+      return Double.doubleToRawLongBits(((PropertyDouble) property).getValue());
+    } else if (property instanceof PropertyFloat) {
+      return Float.floatToRawIntBits(((PropertyFloat) property).getValue()) & 0xFFFFFFFFL;
+    } else if (property instanceof PropertyBool) {
+      return ((PropertyBool) property).getValue() ? 1 : 0;
+    } else {
+      long mask = valueSize == Long.BYTES ? -1L : (1L << (valueSize * Byte.SIZE)) - 1;
+      return ((Number) property.getValue()).longValue() & mask;
+    }
+  }
+
+  public int getPatchCount() {
+    return patches.size();
+  }
+
+  /**
+   * Copies the source file to {@code target} and applies all recorded patches.
+   */
+  public void write(Path target) throws IOException {
+    List<Patch> sorted = new ArrayList<>(patches);
+    sorted.sort((a, b) -> Long.compare(a.offset, b.offset));
+
+    try (FileChannel in = FileChannel.open(source, StandardOpenOption.READ);
+        FileChannel out = FileChannel.open(target, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+      long size = in.size();
+      long position = 0;
+      while (position < size) {
+        position += in.transferTo(position, size - position, out);
+      }
+
+      MappedByteBuffer window = null;
+      long windowStart = 0;
+
+      for (Patch patch : sorted) {
+        if (window == null || patch.offset + patch.size > windowStart + window.capacity()) {
+          if (window != null) {
+            window.force();
+          }
+          windowStart = patch.offset;
+          window = out.map(FileChannel.MapMode.READ_WRITE, windowStart, Math.min(WINDOW_SIZE, size - windowStart));
+          window.order(ByteOrder.LITTLE_ENDIAN);
+        }
+
+        int index = (int) (patch.offset - windowStart);
+        switch (patch.size) {
+          case Long.BYTES:
+            window.putLong(index, patch.value);
+            break;
+          case Integer.BYTES:
+            window.putInt(index, (int) patch.value);
+            break;
+          case Short.BYTES:
+            window.putShort(index, (short) patch.value);
+            break;
+          default:
+            window.put(index, (byte) patch.value);
+            break;
+        }
+      }
+
+      if (window != null) {
+        window.force();
+      }
+    }
+  }
+
+  private static class Patch {
+
+    private final long offset;
+
+    private final int size;
+
+    private final long value;
+
+    public Patch(long offset, int size, long value) {
+      this.offset = offset;
+      this.size = size;
+      this.value = value;
+    }
+
+  }
+
+}
@@ -0,0 +1,123 @@
+package qowyn.ark.tools;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+
+/**
+ * Waits for changes of files in a directory, like the server writing a new save.
+ *
+ * Changes are only reported after all changed files kept their size and modification time for a while,
+ * so files the server is still writing are never read.
+ */
+public class SaveWatcher implements Closeable {
+
+  private static final long QUIET_PERIOD_MILLIS = 2000;
+
+  private final Path directory;
+
+  private final Predicate<Path> filter;
+
+  private final WatchService watchService;
+
+  /**
+   * @param filter decides which files in {@code directory} are of interest
+   */
+  public SaveWatcher(Path directory, Predicate<Path> filter) throws IOException {
+    this.directory = directory;
+    this.filter = filter;
+    this.watchService = directory.getFileSystem().newWatchService();
+    directory.register(watchService, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE);
+  }
+
+  /**
+   * Blocks until at least one matching file changed and all changed files are stable.
+   *
+   * @return changed files, including deleted ones
+   */
+  public Set<Path> awaitChanges() throws IOException {
+    Set<Path> changed = new HashSet<>();
+
+    try {
+      // Wait for the first change
+      while (changed.isEmpty()) {
+        collect(watchService.take(), changed);
+      }
+
+      // Wait until no more events arrive and nothing changes during the quiet period
+      Map<Path, String> snapshot = snapshot(changed);
+      while (true) {
+        WatchKey key = watchService.poll(QUIET_PERIOD_MILLIS, TimeUnit.MILLISECONDS);
+        if (key != null) {
+          collect(key, changed);
+          continue;
+        }
+
+        Map<Path, String> current = snapshot(changed);
+        if (current.equals(snapshot)) {
+          return changed;
+        }
+        snapshot = current;
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException(e);
+    }
+  }
+
+  private void collect(WatchKey key, Set<Path> changed) {
+    for (WatchEvent<?> event : key.pollEvents()) {
+      if (event.kind() == OVERFLOW) {
+        // Lost events, treat everything as changed
+        try (Stream<Path> files = Files.list(directory)) {
+          files.filter(filter).forEach(changed::add);
+        } catch (IOException e) {
+          throw new RuntimeException(e);
+        }
+        continue;
+      }
+
+      Path path = directory.resolve((Path) event.context());
+      if (filter.test(path)) {
+        changed.add(path);
+      }
+    }
+    key.reset();
+  }
+
+  private static Map<Path, String> snapshot(Set<Path> paths) throws IOException {
+    Map<Path, String> snapshot = new HashMap<>();
+    for (Path path : paths) {
+      if (Files.exists(path)) {
+        BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        snapshot.put(path, attributes.size() + "@" + attributes.lastModifiedTime().toMillis());
+      } else {
+        snapshot.put(path, null);
+      }
+    }
+    return snapshot;
+  }
+
+  @Override
+  public void close() throws IOException {
+    watchService.close();
+  }
+
+}
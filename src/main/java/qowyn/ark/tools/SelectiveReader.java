@@ -0,0 +1,124 @@
+package qowyn.ark.tools;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Set;
+
+import qowyn.ark.ArkArchive;
+import qowyn.ark.GameObject;
+import qowyn.ark.properties.PropertyRegistry;
+import qowyn.ark.structs.StructPropertyList;
+
+/**
+ * Reads selected properties of the top-level struct of .arkprofile and .arktribe files.
+ *
+ * Stops after that struct, payloads of all other properties are skipped using their size. Much faster than
+ * ArkProfile and ArkTribe if only a few fields are needed.
+ */
+public class SelectiveReader {
+
+  private static final String NONE = "None";
+
+  /**
+   * @return properties of MyData named in {@code properties}, or null if the profile has no MyData
+   */
+  public static StructPropertyList readProfile(Path path, Set<String> properties) throws IOException {
+    return read(path, "MyData", properties);
+  }
+
+  /**
+   * @return properties of TribeData named in {@code properties}, or null if the tribe has no TribeData
+   */
+  public static StructPropertyList readTribe(Path path, Set<String> properties) throws IOException {
+    return read(path, "TribeData", properties);
+  }
+
+  private static StructPropertyList read(Path path, String structName, Set<String> properties) throws IOException {
+    ArkArchive archive = new ArkArchive(ByteBuffer.wrap(Files.readAllBytes(path)).order(ByteOrder.LITTLE_ENDIAN));
+
+    // Profiles and tribes share the same layout: version, object count and a single object
+    int version = archive.getInt();
+    if (version != 1) {
+      throw new UnsupportedOperationException("Unknown version " + version + " of " + path);
+    }
+
+    int objectCount = archive.getInt();
+    if (objectCount != 1) {
+      throw new UnsupportedOperationException("Unsupported count of objects " + objectCount + " in " + path);
+    }
+
+    GameObject object = new GameObject(archive);
+    archive.position(object.getPropertiesOffset());
+
+    while (true) {
+      String name = archive.getName().toString();
+      if (name.equals(NONE)) {
+        return null;
+      }
+
+      String type = archive.getName().toString();
+      int dataSize = archive.getInt();
+      archive.getInt(); // index
+
+      if (name.equals(structName) && type.equals("StructProperty")) {
+        archive.skipName(); // struct type
+        return readStruct(archive, properties);
+      }
+
+      skipValue(archive, type, dataSize);
+    }
+  }
+
+  private static StructPropertyList readStruct(ArkArchive archive, Set<String> properties) {
+    StructPropertyList struct = new StructPropertyList();
+
+    while (true) {
+      int start = archive.position();
+
+      String name = archive.getName().toString();
+      if (name.equals(NONE)) {
+        return struct;
+      }
+
+      String type = archive.getName().toString();
+      int dataSize = archive.getInt();
+      archive.getInt(); // index
+
+      if (properties.contains(name)) {
+        archive.position(start);
+        struct.getProperties().add(PropertyRegistry.readBinary(archive));
+      } else {
+        skipValue(archive, type, dataSize);
+      }
+    }
+  }
+
+  /**
+   * Skips the type specific part of the header and the value, archive has to be positioned right after the index.
+   */
+  private static void skipValue(ArkArchive archive, String type, int dataSize) {
+    switch (type) {
+      case "BoolProperty":
+        // Value is part of the header, dataSize is 0
+        archive.position(archive.position() + 1);
+        break;
+      case "ByteProperty":
+      case "StructProperty":
+      case "ArrayProperty":
+        archive.skipName();
+        break;
+      case "MapProperty":
+        archive.skipName();
+        archive.skipName();
+        break;
+      default:
+        break;
+    }
+
+    archive.position(archive.position() + dataSize);
+  }
+
+}
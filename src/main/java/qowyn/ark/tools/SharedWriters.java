@@ -37,13 +37,21 @@ public class SharedWriters {
   }
 
   public static void writeCreatureInfo(JsonGenerator generator, GameObject creature, LatLonCalculator latLongCalculator, GameObjectContainer saveFile, boolean writeAllProperties, String fieldName) {
+    writeCreatureInfo(generator, creature, creature.getLocation(), false, latLongCalculator, saveFile, writeAllProperties, fieldName);
+  }
+
+  /**
+   * @param ld location to write instead of the creature's own, creatures in cryopods are wherever the cryopod is
+   * @param cryopod whether {@code creature} has been decoded from a cryopod
+   */
+  public static void writeCreatureInfo(JsonGenerator generator, GameObject creature, LocationData ld, boolean cryopod, LatLonCalculator latLongCalculator, GameObjectContainer saveFile,
+      boolean writeAllProperties, String fieldName) {
     if (fieldName == null) {
       generator.writeStartObject();
     } else {
       generator.writeStartObject(fieldName);
     }
 
-    LocationData ld = creature.getLocation();
     if (ld != null) {
       writeFloat(generator, "x", ld.getX());
       writeFloat(generator, "y", ld.getY());
@@ -54,10 +62,13 @@ public class SharedWriters {
       }
     }
 
-    int dinoID1 = creature.findPropertyValue("DinoID1", Integer.class).orElse(0);
-    int dinoID2 = creature.findPropertyValue("DinoID2", Integer.class).orElse(0);
-    long id = (long) dinoID1 << Integer.SIZE | (dinoID2 & 0xFFFFFFFFL);
-    generator.write("id", id);
+    generator.write("id", CommonFunctions.getDinoId(creature));
+
+    if (cryopod) {
+      generator.write("cryopod", true);
+    } else if (writeAllProperties) {
+      generator.write("cryopod", false);
+    }
 
     if (creature.findPropertyValue("TargetingTeam", Integer.class).orElse(0) >= 50000) {
       generator.write("tamed", true);
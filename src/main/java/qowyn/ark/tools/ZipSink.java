@@ -0,0 +1,107 @@
+package qowyn.ark.tools;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import javax.json.stream.JsonGenerator;
+
+/**
+ * Writes all documents into a single zip file, its central directory serves as index.
+ *
+ * Documents are generated in parallel and appended one at a time. The archive is built next to the target
+ * and only replaces it on {@link #commit()}, closing without commit discards it.
+ */
+public class ZipSink implements OutputSink {
+
+  private final Path target;
+
+  private final Path temp;
+
+  private final boolean compress;
+
+  private final OptionHandler oh;
+
+  private final ZipOutputStream zip;
+
+  private boolean closed;
+
+  private volatile boolean failed;
+
+  /**
+   * @param compress deflate entries if set, otherwise they get stored uncompressed
+   */
+  public ZipSink(Path target, boolean compress, OptionHandler oh) throws IOException {
+    this.target = target;
+    this.temp = AtomicFiles.createTempSibling(target);
+    this.compress = compress;
+    this.oh = oh;
+    this.zip = new ZipOutputStream(new BufferedOutputStream(Files.newOutputStream(temp), 65536));
+    zip.setMethod(compress ? ZipOutputStream.DEFLATED : ZipOutputStream.STORED);
+  }
+
+  @Override
+  public void write(String name, Consumer<JsonGenerator> writeJson) throws IOException {
+    ByteArrayOutputStream buffer = new ByteArrayOutputStream(8192);
+    CommonFunctions.writeJson(buffer, writeJson, oh);
+    byte[] content = buffer.toByteArray();
+
+    ZipEntry entry = new ZipEntry(name);
+    if (!compress) {
+      // Stored entries need size and checksum up front
+      CRC32 crc = new CRC32();
+      crc.update(content);
+      entry.setSize(content.length);
+      entry.setCompressedSize(content.length);
+      entry.setCrc(crc.getValue());
+    }
+
+    synchronized (zip) {
+      try {
+        zip.putNextEntry(entry);
+        zip.write(content);
+        zip.closeEntry();
+      } catch (IOException ex) {
+        // Archive is unusable from here on
+        failed = true;
+        throw ex;
+      }
+    }
+  }
+
+  @Override
+  public void commit() throws IOException {
+    if (failed) {
+      throw new IOException("Writing to the archive failed, " + target + " has been left unchanged");
+    }
+
+    synchronized (zip) {
+      zip.close();
+      closed = true;
+    }
+
+    AtomicFiles.replace(temp, target);
+  }
+
+  @Override
+  public void close() throws IOException {
+    try {
+      synchronized (zip) {
+        if (!closed) {
+          zip.close();
+          closed = true;
+        }
+      }
+    } finally {
+      // Only left over if the archive hasn't been committed
+      Files.deleteIfExists(temp);
+    }
+  }
+
+}